@@ -0,0 +1,367 @@
+package me.dags.converse;
+
+import com.google.common.base.Preconditions;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.args.GenericArguments;
+import org.spongepowered.api.text.Text;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Drives a ConversationSpec with simulated players on a plain JVM.
+ *
+ * The server's scheduler is replaced by a loop of virtual ticks: each tick advances a VirtualClock by 50ms, posts
+ * the input of every player whose think time has passed, then runs the ConversationManager's mailbox drain, and its
+ * expiry check every 20 ticks, exactly as the scheduled tasks would. Think times therefore cost no wall time, and
+ * the wall time measured is the time spent processing Conversations.
+ *
+ * Each player runs a number of Conversations one after another. After each prompt a player may abandon its
+ * Conversation, which is then left to expire on the virtual clock.
+ *
+ * Heap per Conversation is sampled after a full GC once every virtual minute, and the sample taken with the most
+ * Conversations active is reported, so that it reflects Conversations whose contexts have filled up rather than
+ * ones that have just started. The time spent sampling is excluded from the wall time.
+ *
+ * Run the built-in example with: ./gradlew harness [-Pharness.players=<n>]
+ */
+final class LoadHarness {
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(50L);
+    private static final long EXPIRY_TICKS = 20L;
+    private static final long HEAP_SAMPLE_TICKS = 20L * 60L;
+
+    private final ConversationSpec spec;
+    private final int players;
+    private final int conversationsPerPlayer;
+    private final long minThinkNanos;
+    private final long maxThinkNanos;
+    private final double abandonRate;
+    private final long maxTicks;
+    private final BiFunction<ConversationRoute, Random, String> inputs;
+    private final Executor executor;
+    private final Random random;
+
+    private LoadHarness(Builder builder) {
+        this.spec = builder.spec;
+        this.players = builder.players;
+        this.conversationsPerPlayer = builder.conversationsPerPlayer;
+        this.minThinkNanos = builder.minThinkNanos;
+        this.maxThinkNanos = builder.maxThinkNanos;
+        this.abandonRate = builder.abandonRate;
+        this.maxTicks = builder.maxTicks;
+        this.inputs = builder.inputs;
+        this.executor = builder.executor;
+        this.random = new Random(builder.seed);
+    }
+
+    LoadReport run() throws CommandException {
+        StandIns.install();
+        ConversationManager manager = Converse.getConversationManager();
+        VirtualClock clock = new VirtualClock();
+        manager.setTicker(clock);
+        manager.setAsyncExecutor(executor);
+
+        List<SimulatedPlayer> simulated = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            simulated.add(new SimulatedPlayer("player_" + i, conversationsPerPlayer));
+        }
+        Map<SimulatedPlayer, Conversation> active = new IdentityHashMap<>();
+        List<SimulatedPlayer> awaiting = new ArrayList<>();
+        Samples latencies = new Samples();
+        Samples tickTimes = new Samples();
+
+        SpecMetrics metrics = spec.getMetrics();
+        long started = metrics.started.sum();
+        long completed = metrics.completed.sum();
+        long exited = metrics.exited.sum();
+        long expired = metrics.expired.sum();
+
+        long heapBefore = usedHeap();
+        long heapPerConversation = -1L;
+        long heapSampleSize = 0L;
+        long inputCount = 0L;
+        long ticks = 0L;
+        long wallStart = System.nanoTime();
+
+        while (ticks < maxTicks) {
+            clock.advance(TICK_NANOS);
+            long now = clock.read();
+            long tickStart = System.nanoTime();
+            boolean running = false;
+
+            for (SimulatedPlayer player : simulated) {
+                Conversation conversation = active.get(player);
+                if (conversation == null || !manager.isActive(conversation)) {
+                    active.remove(player);
+                    if (!player.startNext()) {
+                        continue;
+                    }
+                    spec.startConversation(player.getSource());
+                    conversation = manager.getConversation(player.getName()).orElse(null);
+                    if (conversation == null) {
+                        continue;
+                    }
+                    active.put(player, conversation);
+                    player.scheduleAnswer(now + thinkTime());
+                }
+
+                running = true;
+                ConversationNode node = conversation.getCurrentNode();
+                if (node != null && player.isDue(now)) {
+                    manager.process(conversation, inputs.apply(node.getRoute(), random));
+                    player.posted();
+                    awaiting.add(player);
+                    inputCount++;
+                }
+            }
+
+            manager.drainMailboxes();
+            if (ticks % EXPIRY_TICKS == 0) {
+                manager.tickConversations();
+            }
+
+            Iterator<SimulatedPlayer> iterator = awaiting.iterator();
+            while (iterator.hasNext()) {
+                SimulatedPlayer player = iterator.next();
+                Conversation conversation = active.get(player);
+                long latency = player.getLatency();
+                if (latency >= 0) {
+                    latencies.add(latency);
+                    player.answered();
+                    iterator.remove();
+                    if (random.nextDouble() >= abandonRate) {
+                        player.scheduleAnswer(now + thinkTime());
+                    }
+                } else if (conversation == null || !manager.isActive(conversation)) {
+                    player.answered();
+                    iterator.remove();
+                }
+            }
+
+            tickTimes.add(System.nanoTime() - tickStart);
+            ticks++;
+
+            long conversations = metrics.active.sum();
+            boolean last = !running || ticks == maxTicks;
+            if (conversations > 0 && (ticks % HEAP_SAMPLE_TICKS == 0 || last && heapSampleSize == 0) && conversations >= heapSampleSize) {
+                long gcStart = System.nanoTime();
+                heapPerConversation = Math.max(0L, usedHeap() - heapBefore) / conversations;
+                heapSampleSize = conversations;
+                wallStart += System.nanoTime() - gcStart;
+            }
+            if (!running) {
+                break;
+            }
+        }
+
+        long wallNanos = System.nanoTime() - wallStart;
+        long messages = 0L;
+        for (SimulatedPlayer player : simulated) {
+            messages += player.getReceived();
+            manager.removeConversation(player.getName());
+        }
+
+        return new LoadReport(players, ticks, clock.read(), wallNanos, inputCount, messages,
+                metrics.started.sum() - started,
+                metrics.completed.sum() - completed,
+                metrics.exited.sum() - exited,
+                metrics.expired.sum() - expired,
+                heapPerConversation, heapSampleSize, latencies.toArray(), tickTimes.toArray());
+    }
+
+    private long thinkTime() {
+        return minThinkNanos + (long) (random.nextDouble() * (maxThinkNanos - minThinkNanos));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    static Builder builder(ConversationSpec spec) {
+        return new Builder(spec);
+    }
+
+    public static void main(String[] args) throws CommandException {
+        StandIns.install();
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        ConversationNode name = ConversationNode.route("name_node")
+                .parameters(GenericArguments.remainingJoinedStrings(Text.of("name")))
+                .prompt(Text.of("What is your name?"))
+                .router(ConversationRoute.goTo("age_node"))
+                .build();
+
+        ConversationNode age = ConversationNode.route("age_node")
+                .intParameter(Text.of("age"))
+                .prompt(Text.of("How old are you?"))
+                .router(ConversationRoute.goTo("colour_node"))
+                .build();
+
+        ConversationNode colour = ConversationNode.route("colour_node")
+                .choices(Text.of("colour"), "red", "green", "blue")
+                .prompt(Text.of("What is your favourite colour?"))
+                .router(ConversationRoute.goTo("confirm_node"))
+                .build();
+
+        ConversationNode confirm = ConversationNode.route("confirm_node")
+                .booleanParameter(Text.of("confirm"))
+                .prompt(Text.of("Is that correct?"))
+                .router((src, contexts) -> contexts.getCurrent().<Boolean>getFirst("confirm").orElse(false)
+                        ? ConversationRoute.end()
+                        : ConversationRoute.goTo("name_node"))
+                .build();
+
+        ConversationSpec spec = ConversationSpec.builder()
+                .first(name)
+                .nodes(age, colour, confirm)
+                .timeOut(30, TimeUnit.SECONDS)
+                .build();
+
+        LoadReport report = builder(spec)
+                .players(players)
+                .conversationsPerPlayer(3)
+                .thinkTime(500, 5000, TimeUnit.MILLISECONDS)
+                .abandonRate(0.01)
+                .inputs(ConversationRoute.goTo("name_node"), "Steve", "Alex", "Herobrine")
+                .inputs(ConversationRoute.goTo("age_node"), "18", "25", "40", "not a number")
+                .inputs(ConversationRoute.goTo("colour_node"), "red", "green", "blue", "purple")
+                .inputs(ConversationRoute.goTo("confirm_node"), "true", "true", "true", "false")
+                .build()
+                .run();
+
+        System.out.println(report);
+    }
+
+    static final class Builder {
+
+        private final ConversationSpec spec;
+        private final Map<ConversationRoute, String[]> samples = new HashMap<>();
+
+        private int players = 1000;
+        private int conversationsPerPlayer = 1;
+        private long minThinkNanos = TimeUnit.SECONDS.toNanos(1L);
+        private long maxThinkNanos = TimeUnit.SECONDS.toNanos(5L);
+        private double abandonRate = 0D;
+        private long maxTicks = 20L * 60L * 60L;
+        private long seed = 0L;
+        private Executor executor = Runnable::run;
+        private BiFunction<ConversationRoute, Random, String> inputs = null;
+
+        private Builder(ConversationSpec spec) {
+            Preconditions.checkNotNull(spec);
+            this.spec = spec;
+        }
+
+        Builder players(int players) {
+            Preconditions.checkArgument(players > 0, "There must be at least one player");
+            this.players = players;
+            return this;
+        }
+
+        Builder conversationsPerPlayer(int conversations) {
+            Preconditions.checkArgument(conversations > 0, "Each player must have at least one conversation");
+            this.conversationsPerPlayer = conversations;
+            return this;
+        }
+
+        /**
+         * Players wait for a time uniformly distributed between min and max before answering a prompt
+         */
+        Builder thinkTime(long min, long max, TimeUnit unit) {
+            Preconditions.checkArgument(min >= 0 && max >= min, "Invalid think time range");
+            this.minThinkNanos = unit.toNanos(min);
+            this.maxThinkNanos = unit.toNanos(max);
+            return this;
+        }
+
+        /**
+         * The probability that a player stops answering after a prompt, leaving its Conversation to expire
+         */
+        Builder abandonRate(double rate) {
+            Preconditions.checkArgument(rate >= 0D && rate <= 1D, "Rate must be between 0 and 1");
+            this.abandonRate = rate;
+            return this;
+        }
+
+        /**
+         * Stop the run after the given number of virtual ticks even if players still have conversations to run
+         */
+        Builder maxTicks(long ticks) {
+            Preconditions.checkArgument(ticks > 0, "Must run for at least one tick");
+            this.maxTicks = ticks;
+            return this;
+        }
+
+        Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * The Executor given to async routers and prompts. By default their work runs on the harness thread.
+         */
+        Builder executor(Executor executor) {
+            Preconditions.checkNotNull(executor);
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Answer prompts from the given node with one of the samples, chosen uniformly
+         */
+        Builder inputs(ConversationRoute route, String... samples) {
+            Preconditions.checkArgument(samples.length > 0, "At least one sample input is required");
+            this.samples.put(route, samples);
+            return this;
+        }
+
+        /**
+         * Answer prompts with the input produced by the function for the node waiting for input, replacing any
+         * sample inputs
+         */
+        Builder inputs(BiFunction<ConversationRoute, Random, String> inputs) {
+            Preconditions.checkNotNull(inputs);
+            this.inputs = inputs;
+            return this;
+        }
+
+        LoadHarness build() {
+            if (inputs == null) {
+                Map<ConversationRoute, String[]> samples = new HashMap<>(this.samples);
+                inputs = (route, random) -> {
+                    String[] options = samples.get(route);
+                    Preconditions.checkState(options != null, "No inputs have been given for node '%s'", route);
+                    return options[random.nextInt(options.length)];
+                };
+            }
+            return new LoadHarness(this);
+        }
+    }
+
+    /**
+     * A growable array of long samples
+     */
+    private static final class Samples {
+
+        private long[] values = new long[1024];
+        private int size = 0;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package me.dags.converse;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of a LoadHarness run. Latencies are wall-clock times, measured from an input being posted to the
+ * Conversation until the last message sent in response to it was received.
+ */
+final class LoadReport {
+
+    final int players;
+    final long ticks;
+    final long virtualNanos;
+    final long wallNanos;
+    final long inputs;
+    final long messages;
+    final long started;
+    final long completed;
+    final long exited;
+    final long expired;
+    final long heapPerConversation;
+    final long heapSampleSize;
+    final long[] latencies;
+    final long[] tickTimes;
+
+    LoadReport(int players, long ticks, long virtualNanos, long wallNanos, long inputs, long messages, long started,
+               long completed, long exited, long expired, long heapPerConversation, long heapSampleSize,
+               long[] latencies, long[] tickTimes) {
+        this.players = players;
+        this.ticks = ticks;
+        this.virtualNanos = virtualNanos;
+        this.wallNanos = wallNanos;
+        this.inputs = inputs;
+        this.messages = messages;
+        this.started = started;
+        this.completed = completed;
+        this.exited = exited;
+        this.expired = expired;
+        this.heapPerConversation = heapPerConversation;
+        this.heapSampleSize = heapSampleSize;
+        this.latencies = latencies;
+        this.tickTimes = tickTimes;
+        Arrays.sort(this.latencies);
+        Arrays.sort(this.tickTimes);
+    }
+
+    double inputsPerSecond() {
+        return wallNanos > 0 ? inputs * 1e9 / wallNanos : 0D;
+    }
+
+    /**
+     * @return The latency at the given percentile (0-1) in nanoseconds
+     */
+    long latency(double percentile) {
+        return percentile(latencies, percentile);
+    }
+
+    long tickTime(double percentile) {
+        return percentile(tickTimes, percentile);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("players:        %d%n", players));
+        builder.append(String.format("simulated:      %d ticks (%ds)%n", ticks, TimeUnit.NANOSECONDS.toSeconds(virtualNanos)));
+        builder.append(String.format("wall time:      %dms%n", TimeUnit.NANOSECONDS.toMillis(wallNanos)));
+        builder.append(String.format("conversations:  started=%d completed=%d exited=%d expired=%d%n", started, completed, exited, expired));
+        builder.append(String.format("inputs:         %d (%.0f/s)%n", inputs, inputsPerSecond()));
+        builder.append(String.format("messages:       %d%n", messages));
+        builder.append(String.format("latency (us):   p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+                micros(latency(0.5)), micros(latency(0.9)), micros(latency(0.99)), micros(latency(0.999)), micros(latency(1D))));
+        builder.append(String.format("tick time (us): p50=%d p99=%d max=%d%n",
+                micros(tickTime(0.5)), micros(tickTime(0.99)), micros(tickTime(1D))));
+        if (heapSampleSize > 0) {
+            builder.append(String.format("heap/conversation: ~%d bytes (%d active, after full GC)", heapPerConversation, heapSampleSize));
+        } else {
+            builder.append("heap/conversation: not sampled");
+        }
+        return builder.toString();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int index = (int) Math.ceil(sorted.length * percentile) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
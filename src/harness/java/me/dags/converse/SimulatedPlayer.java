@@ -0,0 +1,81 @@
+package me.dags.converse;
+
+import org.spongepowered.api.command.CommandSource;
+
+/**
+ * A stand-in CommandSource (see StandIns) that answers the prompts it is sent after a think time.
+ */
+final class SimulatedPlayer {
+
+    private final CommandSource source;
+    private final String name;
+
+    private int remaining;
+    private long answerAt = Long.MAX_VALUE;
+    private long postedAt = Long.MAX_VALUE;
+    private long receivedAt = 0L;
+    private long received = 0L;
+
+    SimulatedPlayer(String name, int conversations) {
+        this.name = name;
+        this.remaining = conversations;
+        this.source = StandIns.source(name, this::receive);
+    }
+
+    CommandSource getSource() {
+        return source;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getReceived() {
+        return received;
+    }
+
+    /**
+     * Claim one of the player's remaining conversations
+     * @return false if the player has no conversations left to start
+     */
+    boolean startNext() {
+        if (remaining <= 0) {
+            return false;
+        }
+        remaining--;
+        return true;
+    }
+
+    boolean isDue(long now) {
+        return answerAt <= now;
+    }
+
+    void scheduleAnswer(long at) {
+        answerAt = at;
+    }
+
+    void posted() {
+        answerAt = Long.MAX_VALUE;
+        postedAt = System.nanoTime();
+    }
+
+    /**
+     * @return The wall time from posting the last input until the last message was received in response, or -1 if
+     * nothing has been received since the input was posted
+     */
+    long getLatency() {
+        return receivedAt >= postedAt ? receivedAt - postedAt : -1L;
+    }
+
+    /**
+     * Stop waiting for a response to the last input
+     */
+    void answered() {
+        postedAt = Long.MAX_VALUE;
+    }
+
+    private void receive() {
+        received++;
+        receivedAt = System.nanoTime();
+    }
+}
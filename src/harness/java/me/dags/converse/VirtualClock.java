@@ -0,0 +1,21 @@
+package me.dags.converse;
+
+import com.google.common.base.Ticker;
+
+/**
+ * A Ticker that only moves when it is advanced, so that expiry, passivation and think times can be simulated
+ * without waiting for them.
+ */
+final class VirtualClock extends Ticker {
+
+    private long nanos = 0L;
+
+    @Override
+    public long read() {
+        return nanos;
+    }
+
+    void advance(long nanos) {
+        this.nanos += nanos;
+    }
+}
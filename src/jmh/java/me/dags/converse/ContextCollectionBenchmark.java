@@ -0,0 +1,77 @@
+package me.dags.converse;
+
+import org.openjdk.jmh.annotations.*;
+import org.spongepowered.api.command.args.GenericArguments;
+import org.spongepowered.api.text.Text;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ContextCollection lookups for a Conversation that has visited three nodes ten times each.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ContextCollectionBenchmark {
+
+    private static final Text NAME = Text.of("name");
+
+    private ContextCollection contexts;
+    private ContextSlot ageSlot;
+
+    @Setup
+    public void setup() throws Exception {
+        StandIns.install();
+        ConversationNode name = ConversationNode.route("name")
+                .parameters(GenericArguments.remainingJoinedStrings(NAME))
+                .router(ConversationRoute.goTo("age"))
+                .build();
+        ConversationNode age = ConversationNode.route("age")
+                .intParameter(Text.of("age"))
+                .router(ConversationRoute.goTo("location"))
+                .build();
+        ConversationNode location = ConversationNode.route("location")
+                .parameters(GenericArguments.remainingJoinedStrings(Text.of("location")))
+                .router(ConversationRoute.end())
+                .build();
+
+        contexts = new ContextCollection();
+        ageSlot = age.getSlot("age").orElseThrow(IllegalStateException::new);
+        for (int i = 0; i < 10; i++) {
+            name.parse(StandIns.source("benchmark"), "Steve Smith " + i, contexts);
+            age.parse(StandIns.source("benchmark"), Integer.toString(20 + i), contexts);
+            location.parse(StandIns.source("benchmark"), "Somewhere " + i, contexts);
+        }
+    }
+
+    @Benchmark
+    public Optional<Object> getLastByString() {
+        return contexts.getLast("name", "name");
+    }
+
+    @Benchmark
+    public Optional<Object> getLastByText() {
+        return contexts.getLast("name", NAME);
+    }
+
+    @Benchmark
+    public int getLastBySlot() {
+        return contexts.getLastContext("age").map(context -> context.getInt(ageSlot, 0)).orElse(0);
+    }
+
+    @Benchmark
+    public List<ConversationContext> getAllContexts() {
+        return contexts.getAllContexts("location");
+    }
+
+    @Benchmark
+    public Collection<Object> getAll() {
+        return contexts.getAll("age", "age");
+    }
+}
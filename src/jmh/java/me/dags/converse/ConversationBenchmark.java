@@ -0,0 +1,62 @@
+package me.dags.converse;
+
+import org.openjdk.jmh.annotations.*;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.GenericArguments;
+import org.spongepowered.api.text.Text;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures Conversation.process end to end: parsing, input echo, routing and prompting, for a two node
+ * conversation that loops between a statically and a dynamically routed node.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConversationBenchmark {
+
+    private CommandSource source;
+    private Conversation conversation;
+
+    @Setup
+    public void setup() throws CommandException {
+        StandIns.install();
+        ConversationNode name = ConversationNode.route("name")
+                .parameters(GenericArguments.remainingJoinedStrings(Text.of("name")))
+                .prompt(Text.of("What's your name?"))
+                .router(ConversationRoute.goTo("age"))
+                .build();
+
+        ConversationNode age = ConversationNode.route("age")
+                .intParameter(Text.of("age"))
+                .prompt(Text.of("How old are you?"))
+                .router((src, contexts) -> ConversationRoute.goTo("name"))
+                .build();
+
+        ConversationSpec spec = ConversationSpec.builder()
+                .nodes(name, age)
+                .first(name)
+                .retention(RetentionPolicy.last(4))
+                .build();
+
+        source = StandIns.source("benchmark");
+        spec.startConversation(source);
+        conversation = Converse.getConversationManager().getConversation(source).orElseThrow(IllegalStateException::new);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Converse.getConversationManager().removeConversation(conversation);
+    }
+
+    @Benchmark
+    public void process() {
+        conversation.processSafely("Steve Smith");
+        conversation.processSafely("42");
+    }
+}
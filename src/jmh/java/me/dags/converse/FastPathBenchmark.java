@@ -0,0 +1,133 @@
+package me.dags.converse;
+
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.*;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.command.args.GenericArguments;
+import org.spongepowered.api.text.Text;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Compares the FastPath parse of single-parameter nodes against the general tokenizer and CommandElement parse of
+ * an otherwise identical node.
+ *
+ * Before measuring, the setup checks that every FastPath parses a set of edge-case inputs to the same values as the
+ * general parser (or leaves them to it), and fails the run if not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FastPathBenchmark {
+
+    @Param({"integer", "string", "yesno", "joined"})
+    public String shape;
+
+    private CommandSource source;
+    private ConversationNode fast;
+    private ConversationNode general;
+    private ContextCollection contexts;
+    private String input;
+
+    @Setup
+    public void setup() {
+        StandIns.install();
+        Text key = Text.of("value");
+        source = StandIns.source("benchmark");
+        verify(source, key);
+
+        ConversationNode.Builder fastBuilder = ConversationNode.route("fast").router(ConversationRoute.end()).experimentalFastPaths();
+        CommandElement element;
+        switch (shape) {
+            case "integer":
+                fastBuilder.intParameter(key);
+                element = GenericArguments.integer(key);
+                input = "42";
+                break;
+            case "string":
+                fastBuilder.stringParameter(key);
+                element = GenericArguments.string(key);
+                input = "Steve";
+                break;
+            case "yesno":
+                fastBuilder.booleanParameter(key);
+                element = GenericArguments.bool(key);
+                input = "yes";
+                break;
+            case "joined":
+                fastBuilder.joinedStringsParameter(key);
+                element = GenericArguments.remainingJoinedStrings(key);
+                input = "meet me at spawn in five minutes";
+                break;
+            default:
+                throw new IllegalArgumentException(shape);
+        }
+
+        fast = fastBuilder.build();
+        general = ConversationNode.route("general").router(ConversationRoute.end()).parameters(element).build();
+        contexts = new ContextCollection(RetentionPolicy.last(1));
+    }
+
+    /**
+     * Check the FastPath contract: for each input, the fast node must produce the same values as the general node,
+     * or fail in the same way
+     */
+    private static void verify(CommandSource source, Text key) {
+        Map<String, Integer> colours = ImmutableMap.of("red", 1, "blue", 2);
+        verify(source, key, b -> b.intParameter(key), GenericArguments.integer(key),
+                "5", "-5", "+5", "05", "5 extra", "  5", "5.", "-", "+", "2147483647", "-2147483648", "9999999999", "0x1F", "#1F", "five", "'5'", "\"5\"");
+        verify(source, key, b -> b.doubleParameter(key), GenericArguments.doubleNum(key),
+                "5", "5.", ".5", "-5.5", "+5", "5.5 extra", "1e3", ".", "-", "NaN", "Infinity");
+        verify(source, key, b -> b.booleanParameter(key), GenericArguments.bool(key),
+                "true", "TRUE", "True", "false", "False", "FALSE", "yes", "Y", "n", "verum", "verymuchso", "maybe", "yes no", "\"yes\"");
+        verify(source, key, b -> b.choices(key, colours), GenericArguments.choices(key, colours),
+                "red", "RED", "Red", "blue extra", "green");
+        verify(source, key, b -> b.stringParameter(key), GenericArguments.string(key),
+                "Steve", "Steve extra", "  Steve", "\"Steve\"", "Ste\\ve");
+        verify(source, key, b -> b.joinedStringsParameter(key), GenericArguments.remainingJoinedStrings(key),
+                "meet me  at spawn", " meet me ", "a\tb", "a", "'quoted' words", "\"quoted words\"");
+    }
+
+    private static void verify(CommandSource source, Text key, Function<ConversationNode.Builder, ConversationNode.Builder> parameter, CommandElement element, String... inputs) {
+        ConversationNode fast = parameter.apply(ConversationNode.route("fast").router(ConversationRoute.end()).experimentalFastPaths()).build();
+        ConversationNode general = ConversationNode.route("general").router(ConversationRoute.end()).parameters(element).build();
+        for (String input : inputs) {
+            Object expected = parse(general, source, key, input);
+            Object actual = parse(fast, source, key, input);
+            if (!Objects.equals(expected, actual)) {
+                throw new IllegalStateException("FastPath for " + element + " parsed '" + input + "' to " + actual + " rather than " + expected);
+            }
+        }
+    }
+
+    private static Object parse(ConversationNode node, CommandSource source, Text key, String input) {
+        ContextCollection contexts = new ContextCollection(RetentionPolicy.last(1));
+        try {
+            node.parse(source, input, contexts);
+        } catch (ArgumentParseException e) {
+            return "failed";
+        }
+        return new ArrayList<>(contexts.getCurrent().getAll(key));
+    }
+
+    @Benchmark
+    public ConversationContext fast() throws ArgumentParseException {
+        fast.parse(source, input, contexts);
+        return contexts.getCurrent();
+    }
+
+    @Benchmark
+    public ConversationContext general() throws ArgumentParseException {
+        general.parse(source, input, contexts);
+        return contexts.getCurrent();
+    }
+}
@@ -0,0 +1,73 @@
+package me.dags.converse;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.MessageChannel;
+import org.spongepowered.api.text.channel.MessageReceiver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ConversationManager's per-tick expiry check and the suppression of chat recipients (formerly
+ * removeFromChannel) with many active Conversations, half of which suppress messages.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ManagerBenchmark {
+
+    private static final Text MESSAGE = Text.of("Hello world");
+
+    @Param({"1000", "10000", "100000"})
+    public int conversations;
+
+    private final List<CommandSource> sources = new ArrayList<>();
+    private ConversationManager manager;
+    private MessageChannel channel;
+
+    @Setup
+    public void setup() throws CommandException {
+        StandIns.install();
+        ConversationNode node = ConversationNode.route("node")
+                .prompt(Text.of("Say something"))
+                .router(ConversationRoute.end())
+                .build();
+        ConversationSpec suppressing = ConversationSpec.builder().first(node).build();
+        ConversationSpec chatty = ConversationSpec.builder().first(node).suppressMessages(false).build();
+
+        manager = Converse.getConversationManager();
+        for (int i = 0; i < conversations; i++) {
+            CommandSource source = StandIns.source("source_" + i);
+            sources.add(source);
+            (i % 2 == 0 ? suppressing : chatty).startConversation(source);
+        }
+        channel = StandIns.channel(sources);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sources.forEach(source -> manager.removeConversation(source.getIdentifier()));
+        sources.clear();
+    }
+
+    @Benchmark
+    public void tickConversations() {
+        manager.tickConversations();
+    }
+
+    @Benchmark
+    public void filterChannel(Blackhole blackhole) {
+        MessageChannel filtered = manager.filterChannel(channel);
+        for (MessageReceiver member : filtered.getMembers()) {
+            blackhole.consume(filtered.transformMessage(null, member, MESSAGE, null));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package me.dags.converse;
+
+import org.openjdk.jmh.annotations.*;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+import org.spongepowered.api.command.args.GenericArguments;
+import org.spongepowered.api.text.Text;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ConversationNode.parse and ConversationNode.complete over several common parameter mixes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NodeBenchmark {
+
+    @Param({"integer", "string", "choices", "mixed"})
+    public String parameters;
+
+    private CommandSource source;
+    private ConversationNode node;
+    private ContextCollection contexts;
+    private String input;
+    private String partial;
+
+    @Setup
+    public void setup() {
+        StandIns.install();
+        String[] choices = new String[50];
+        for (int i = 0; i < choices.length; i++) {
+            choices[i] = "choice_" + i;
+        }
+
+        ConversationNode.Builder builder = ConversationNode.route("node").router(ConversationRoute.end());
+        switch (parameters) {
+            case "integer":
+                builder.intParameter(Text.of("amount"));
+                input = "42";
+                partial = "4";
+                break;
+            case "string":
+                builder.parameters(GenericArguments.remainingJoinedStrings(Text.of("name")));
+                input = "Steve Smith";
+                partial = "Ste";
+                break;
+            case "choices":
+                builder.choices(Text.of("choice"), choices);
+                input = "choice_25";
+                partial = "choice_2";
+                break;
+            case "mixed":
+                builder.intParameter(Text.of("amount"))
+                        .choices(Text.of("choice"), choices)
+                        .parameters(GenericArguments.remainingJoinedStrings(Text.of("note")));
+                input = "3 choice_25 a short note";
+                partial = "3 choice_2";
+                break;
+            default:
+                throw new IllegalArgumentException(parameters);
+        }
+
+        node = builder.build();
+        source = StandIns.source("benchmark");
+        contexts = new ContextCollection(RetentionPolicy.last(1));
+    }
+
+    @Benchmark
+    public ConversationContext parse() throws ArgumentParseException {
+        node.parse(source, input, contexts);
+        return contexts.getCurrent();
+    }
+
+    @Benchmark
+    public List<String> complete() throws ArgumentParseException {
+        return node.complete(source, partial);
+    }
+}
@@ -0,0 +1,93 @@
+package me.dags.converse;
+
+import com.google.common.collect.ImmutableMap;
+import org.openjdk.jmh.annotations.*;
+import org.spongepowered.api.text.Text;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares resolving a router's route to a node through the compiled state table against the previous approach of
+ * allocating a lowercased route per call and comparing routes by their strings. 'declared' measures a router that
+ * returns a route it holds, 'resolved' a router that calls ConversationRoute.goTo(key) on every call, which is an
+ * allocation-free registry hit when the key matches the declared case.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RouteBenchmark {
+
+    @Param({"location_node", "Location_Node"})
+    public String key;
+
+    private ConversationSpec spec;
+    private ConversationRoute route;
+    private Map<LegacyRoute, ConversationNode> legacy;
+
+    @Setup
+    public void setup() {
+        StandIns.install();
+        ImmutableMap.Builder<LegacyRoute, ConversationNode> nodes = ImmutableMap.builder();
+        ConversationSpec.Builder builder = ConversationSpec.builder();
+        for (String route : new String[]{"name_node", "age_node", "location_node", "confirm_node"}) {
+            ConversationNode node = ConversationNode.route(route)
+                    .prompt(Text.of(route))
+                    .router(ConversationRoute.end())
+                    .build();
+            builder.nodes(node);
+            nodes.put(new LegacyRoute(route), node);
+        }
+        ConversationNode first = ConversationNode.route("first").router(ConversationRoute.end()).build();
+        spec = builder.first(first).build();
+        legacy = nodes.build();
+        route = ConversationRoute.goTo(key);
+    }
+
+    @Benchmark
+    public ConversationNode declared() {
+        return spec.getNode(spec.getState(route));
+    }
+
+    @Benchmark
+    public ConversationNode resolved() {
+        return spec.getNode(spec.getState(ConversationRoute.goTo(key)));
+    }
+
+    @Benchmark
+    public ConversationNode legacy() {
+        return legacy.get(new LegacyRoute(key.toLowerCase()));
+    }
+
+    /**
+     * Reproduces the ConversationRoute implementation before routes were declared
+     */
+    private static final class LegacyRoute {
+
+        private final String key;
+        private final int hash;
+
+        private LegacyRoute(String key) {
+            this.key = key;
+            this.hash = key.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other != null && other.getClass() == this.getClass() && other.toString().equals(this.toString());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return key;
+        }
+    }
+}
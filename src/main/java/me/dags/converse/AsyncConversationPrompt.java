@@ -0,0 +1,30 @@
+package me.dags.converse;
+
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Provides the Text used to prompt a CommandSource for input when building it requires slow work, such as looking up
+ * a balance or a leaderboard position.
+ *
+ * The prompt is called on the main thread, where it may read the ContextCollection, and returns a future of the
+ * Text. Blocking work should be submitted to the provided Executor. Input received before the prompt has been sent
+ * is queued until it has.
+ *
+ * Nodes may prefetch the async prompts of the nodes they route to while waiting for input, in which case the prompt
+ * is called with the contexts as they were before that input was parsed.
+ */
+@FunctionalInterface
+public interface AsyncConversationPrompt {
+
+    /**
+     * @param src The CommandSource involved in the conversation.
+     * @param contexts The contexts of the conversation.
+     * @param executor The Executor on which blocking work should be performed.
+     * @return A future of the Text that will be sent to the CommandSource to prompt them for input.
+     */
+    CompletableFuture<Text> apply(CommandSource src, ContextCollection contexts, Executor executor);
+}
@@ -0,0 +1,29 @@
+package me.dags.converse;
+
+import org.spongepowered.api.command.CommandSource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A ConversationRouter for routing decisions that depend on slow work, such as a database lookup.
+ *
+ * The router is called on the main thread, where it may read the ContextCollection, and returns a future of the
+ * next ConversationRoute. Blocking work should be submitted to the provided Executor rather than performed by the
+ * router itself. While the future is incomplete the Conversation is pending: further input is queued and is only
+ * parsed once the Conversation has moved on to the next ConversationNode.
+ *
+ * The future is completed exceptionally if it does not complete within the node's router timeout, in which case
+ * the CommandSource is re-prompted for input at the current node.
+ */
+@FunctionalInterface
+public interface AsyncConversationRouter {
+
+    /**
+     * @param src The CommandSource involved in this conversation.
+     * @param contexts The contexts of the conversation.
+     * @param executor The Executor on which blocking work should be performed.
+     * @return A future of the ConversationRoute of the next ConversationNode to move onto.
+     */
+    CompletableFuture<ConversationRoute> process(CommandSource src, ContextCollection contexts, Executor executor);
+}
@@ -1,12 +1,11 @@
 package me.dags.converse;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import org.spongepowered.api.text.Text;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Optional;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -17,14 +16,31 @@ import java.util.stream.Collectors;
  * A single ConversationNode may be visited multiple times during a conversation with each ConversationContext
  * being stored in order of insertion.
  * The are convenience methods for retrieving the first and last inserted contexts.
+ *
+ * How many contexts are kept per route is decided by the RetentionPolicy of the node or spec, so the first, last
+ * and all-contexts getters operate within the retained window.
  */
 public final class ContextCollection {
 
-    private final ArrayListMultimap<String, ConversationContext> contexts = ArrayListMultimap.create();
+    private final Map<String, RetentionPolicy.History> contexts = new LinkedHashMap<>();
+    private final RetentionPolicy retention;
     private ConversationContext current = new ConversationContext();
+    private String currentRoute = null;
+
+    public ContextCollection() {
+        this(RetentionPolicy.all());
+    }
+
+    ContextCollection(RetentionPolicy retention) {
+        this.retention = retention;
+    }
 
     public Collection<ConversationRoute> getRoutes() {
-        return contexts.keySet().stream().map(ConversationRoute::goTo).collect(Collectors.toList());
+        List<ConversationRoute> routes = new ArrayList<>(contexts.size());
+        for (String route : contexts.keySet()) {
+            routes.add(ConversationRoute.goTo(route));
+        }
+        return routes;
     }
 
     public ConversationContext getCurrent() {
@@ -36,23 +52,17 @@ public final class ContextCollection {
     }
 
     public Optional<ConversationContext> getFirstContext(Object route) {
-        List<ConversationContext> list = contexts.get(route.toString());
-        if (list.size() > 0) {
-            return Optional.ofNullable(list.get(0));
-        }
-        return Optional.empty();
+        RetentionPolicy.History history = contexts.get(route.toString());
+        return history != null ? Optional.ofNullable(history.first()) : Optional.empty();
     }
 
     public Optional<ConversationContext> getLastContext(Object route) {
-        List<ConversationContext> list = contexts.get(route.toString());
-        if (list.size() > 0) {
-            return Optional.ofNullable(list.get(list.size() - 1));
-        }
-        return Optional.empty();
+        RetentionPolicy.History history = contexts.get(route.toString());
+        return history != null ? Optional.ofNullable(history.last()) : Optional.empty();
     }
 
     public List<ConversationContext> getAllContexts(Object route) {
-        return ImmutableList.copyOf(contexts.get(route.toString()));
+        return ImmutableList.copyOf(history(route));
     }
 
     public <T> Optional<T> getOne(Object route, String key) {
@@ -72,18 +82,72 @@ public final class ContextCollection {
     }
 
     public <T> Collection<T> getAll(Object route, String key) {
-        return contexts.get(route.toString()).stream().flatMap(context -> context.<T>stream(key)).collect(Collectors.toList());
+        return history(route).stream().flatMap(context -> context.<T>stream(key)).collect(Collectors.toList());
     }
 
     public <T> Collection<T> getAll(Object route, Text key) {
-        return contexts.get(route.toString()).stream().flatMap(context -> context.<T>stream(key)).collect(Collectors.toList());
+        return history(route).stream().flatMap(context -> context.<T>stream(key)).collect(Collectors.toList());
     }
 
     public void putContext(Object route, ConversationContext context) {
-        contexts.put(route.toString(), context);
+        putContext(route, context, null);
     }
 
-    void setCurrent(ConversationContext current) {
+    void putContext(Object route, ConversationContext context, @Nullable RetentionPolicy policy) {
+        visit(route, policy).add(context);
+    }
+
+    /**
+     * Record that the route has been visited, even if none of its contexts are retained
+     */
+    RetentionPolicy.History visit(Object route, @Nullable RetentionPolicy policy) {
+        String key = route.toString();
+        RetentionPolicy.History history = contexts.get(key);
+        if (history == null) {
+            history = (policy != null ? policy : retention).create();
+            contexts.put(key, history);
+        }
+        return history;
+    }
+
+    void setCurrent(Object route, ConversationContext current) {
+        this.currentRoute = route.toString();
         this.current = current;
     }
+
+    /**
+     * @return A copy of the collection that is unaffected by contexts added to this one afterwards
+     */
+    ContextCollection snapshot() {
+        ContextCollection copy = new ContextCollection(RetentionPolicy.all());
+        contexts.forEach((route, history) -> {
+            RetentionPolicy.History copied = copy.visit(route, null);
+            for (ConversationContext context : history.all()) {
+                copied.add(context);
+            }
+        });
+        copy.current = current;
+        copy.currentRoute = currentRoute;
+        return copy;
+    }
+
+    /**
+     * @return The route of the node that produced the current context, or null if no input has been parsed yet
+     */
+    @Nullable
+    String getCurrentRoute() {
+        return currentRoute;
+    }
+
+    /**
+     * Visit the retained contexts of each route, in order of insertion
+     */
+    void forEachRoute(BiConsumer<String, List<ConversationContext>> consumer) {
+        contexts.forEach((route, history) -> consumer.accept(route, history.all()));
+    }
+
+    private List<ConversationContext> history(Object route) {
+        RetentionPolicy.History history = contexts.get(route.toString());
+        return history != null ? history.all() : Collections.emptyList();
+    }
 }
@@ -0,0 +1,88 @@
+package me.dags.converse;
+
+import com.google.common.collect.ImmutableMap;
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.Nullable;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The fixed layout of the ConversationContexts produced by a ConversationNode.
+ * Each parameter key declared by the node is assigned a slot index when the node is built, so that parsed values
+ * can be stored in arrays rather than a multimap.
+ *
+ * The argument keys derived from the node's parameter Texts are remembered by identity, so that lookups using the
+ * same Text instances the parameters were declared with do not convert them again.
+ */
+final class ContextSchema {
+
+    static final ContextSchema EMPTY = new Builder().build();
+
+    private final ContextSlot[] slots;
+    private final Map<String, ContextSlot> byKey;
+    private final Map<Text, String> argKeys;
+
+    private ContextSchema(Builder builder) {
+        this.slots = new ContextSlot[builder.keys.size()];
+        ImmutableMap.Builder<String, ContextSlot> byKey = ImmutableMap.builder();
+        int index = 0;
+        for (Map.Entry<String, ContextSlot.Type> entry : builder.keys.entrySet()) {
+            ContextSlot slot = new ContextSlot(this, entry.getKey(), entry.getValue(), index);
+            slots[index++] = slot;
+            byKey.put(entry.getKey(), slot);
+        }
+        this.byKey = byKey.build();
+        this.argKeys = new IdentityHashMap<>(builder.argKeys);
+    }
+
+    int size() {
+        return slots.length;
+    }
+
+    ContextSlot getSlot(int index) {
+        return slots[index];
+    }
+
+    ContextSlot getSlot(String key) {
+        return byKey.get(key);
+    }
+
+    /**
+     * @return The argument key of the Text, converted when the node was built if it is one of its parameter keys
+     */
+    String argKey(@Nullable Text key) {
+        String argKey = argKeys.get(key);
+        return argKey != null ? argKey : ConversationContext.textToArgKey(key);
+    }
+
+    /**
+     * @return The slot index for the key, or -1 if the key is not part of this schema
+     */
+    int indexOf(String key) {
+        ContextSlot slot = byKey.get(key);
+        return slot != null ? slot.getIndex() : -1;
+    }
+
+    static final class Builder {
+
+        private final Map<String, ContextSlot.Type> keys = new LinkedHashMap<>();
+        private final Map<Text, String> argKeys = new IdentityHashMap<>();
+
+        Builder add(Text text, String key, ContextSlot.Type type) {
+            argKeys.put(text, key);
+            return add(key, type);
+        }
+
+        Builder add(String key, ContextSlot.Type type) {
+            ContextSlot.Type current = keys.get(key);
+            keys.put(key, current == null || current == type ? type : ContextSlot.Type.OBJECT);
+            return this;
+        }
+
+        ContextSchema build() {
+            return new ContextSchema(this);
+        }
+    }
+}
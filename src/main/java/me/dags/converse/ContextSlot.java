@@ -0,0 +1,51 @@
+package me.dags.converse;
+
+/**
+ * A handle to one of a ConversationNode's parameters.
+ * Reading a ConversationContext through a ContextSlot goes straight to the slot's storage, skipping the key
+ * hashing and Text-to-key conversion of the key-based accessors.
+ *
+ * Slots are obtained from the ConversationNode that declares the parameter via ConversationNode.getSlot(key).
+ */
+public final class ContextSlot {
+
+    enum Type {
+        OBJECT,
+        INTEGER,
+        DOUBLE,
+        BOOLEAN,
+    }
+
+    private final ContextSchema schema;
+    private final String key;
+    private final Type type;
+    private final int index;
+
+    ContextSlot(ContextSchema schema, String key, Type type, int index) {
+        this.schema = schema;
+        this.key = key;
+        this.type = type;
+        this.index = index;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    ContextSchema getSchema() {
+        return schema;
+    }
+
+    Type getType() {
+        return type;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
@@ -1,20 +1,34 @@
 package me.dags.converse;
 
-import com.google.common.base.Stopwatch;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.command.args.ArgumentParseException;
 import org.spongepowered.api.text.Text;
-import org.spongepowered.api.text.TextTemplate;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Contains all information relevant to a single instance of a Conversation.
- * The CommandSource involved is weakly referenced.
+ * The CommandSource involved is weakly referenced. The reference is registered with the ConversationManager so that
+ * the Conversation is reclaimed promptly once the CommandSource has been garbage collected.
  * The time between user inputs is monitored for the purposes of expiring stale Conversations.
  *
  * The Conversation will end without further processing if:
@@ -22,32 +36,71 @@ import java.util.Optional;
  *  - the Conversation has been assigned the 'exit' or 'end' ConversationRoute
  *  - the Conversation has expired
  *
+ * A Conversation left idle may be passivated by the ConversationManager, which replaces its ContextCollection with a
+ * compact encoded form. The ContextCollection is transparently decoded the next time it is needed.
+ *
+ * Inputs are posted to the Conversation's mailbox from any thread and are processed in the order they arrived
+ * when the ConversationManager drains it on the main thread. While an input is being parsed off the main thread, an
+ * AsyncConversationRouter is deciding the next route, or an AsyncConversationPrompt is building the next prompt, the
+ * Conversation is pending and further input is left in the mailbox until it is ready.
+ *
+ * Input is checked against the ConversationSpec's input limits as it is posted: input that is too long, arrives
+ * faster than the spec's rate limit or would overfill the mailbox is dropped or rejected before it is queued.
+ *
+ * Messages sent to the CommandSource while a step is processed (input echoes, prompts, completion messages) are
+ * held in an outbox and sent together as a single joined message when the step finishes. Routers and callbacks should
+ * message the CommandSource through send(Text), so that their messages are joined with the rest in order; messages
+ * sent straight to the CommandSource arrive ahead of the outbox. Once a Conversation has completed, exited or
+ * expired its outbox is sent straight away, ahead of any Conversation the callback starts.
+ *
  *  If Conversation is assigned a ConversationRoute that does not exist, a ConversationException will be thrown.
  *  This will typically result in the Conversation being exited & disposed-of unless a third party is handling
  *  the exception.
  */
 public final class Conversation {
 
+    private static final Text TOO_LONG = Text.of("Your input is too long");
+    private static final Text TOO_FAST = Text.of("You are sending input too quickly");
+    private static final Text TOO_MANY = Text.of("Please wait for your previous input to be processed");
+    private static final Text TIMED_OUT = Text.of("Timed out, please try again");
+    private static final int MAX_COALESCED = 8;
+
     private final String identifier;
     private final ConversationSpec spec;
-    private final WeakReference<CommandSource> reference;
-    private final ContextCollection context = new ContextCollection();
-    private final Stopwatch stopwatch = Stopwatch.createStarted();
+    private final SourceReference reference;
+    private final BlockingQueue<String> mailbox;
+    private final TokenBucket limiter;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
 
-    private ConversationNode node = null;
+    private int state = ConversationSpec.NONE;
+    private volatile ContextCollection context;
+    private volatile byte[] passivated = null;
+    private volatile long lastInput;
+    private volatile CompletableFuture<?> awaiting = null;
+    private Runnable resume = null;
+    private CompletableFuture<Text>[] prefetched = null;
+    private int prefetchedFrom = ConversationSpec.NONE;
+    private volatile long awaitStart;
+    private volatile long awaitDeadline;
+    private List<Text> outbox = null;
+    private int stepDepth = 0;
 
     Conversation(CommandSource source, ConversationSpec spec) {
         this.identifier = source.getIdentifier();
-        this.reference = new WeakReference<>(source);
+        this.reference = new SourceReference(source, this, Converse.getConversationManager().getReferenceQueue());
         this.spec = spec;
+        this.context = new ContextCollection(spec.getRetention());
+        this.mailbox = new LinkedBlockingQueue<>(spec.getMaxQueuedInputs());
+        punchIn();
+        this.limiter = spec.newRateLimiter(lastInput);
     }
 
     public List<String> complete(String input) throws ArgumentParseException {
         Optional<CommandSource> source = getSource();
         if (source.isPresent()) {
             punchIn();
-            if (node != null) {
-                return node.complete(source.get(), input);
+            if (state >= 0) {
+                return spec.getNode(state).complete(source.get(), input);
             }
         } else {
             spec.onExit(this);
@@ -66,21 +119,20 @@ public final class Conversation {
         Optional<CommandSource> source = getSource();
         if (source.isPresent()) {
             punchIn();
-            if (node != null) {
+            if (state >= 0) {
+                ConversationNode node = spec.getNode(state);
+
                 // parse the input string
-                node.parse(source.get(), input, context);
-
-                // feed back the input to the CommandSource
-                Optional<TextTemplate> template = node.getInputTemplate();
-                if (template.isPresent()) {
-                    Map<String, Object> args = getContext().getCurrent().toMap();
-                    args.put("raw_input", input);
-                    Text message = template.get().apply(args).build();
-                    source.get().sendMessage(message);
+                long start = System.nanoTime();
+                ConversationNode.ParsedInput parsed;
+                try {
+                    parsed = node.parseOffThread(source.get(), input);
+                    node.parseOnMainThread(source.get(), parsed);
+                } catch (ArgumentParseException e) {
+                    node.getMetrics().parseFailures.increment();
+                    throw e;
                 }
-
-                // process the input data
-                node.process(this);
+                commitParsed(node, source.get(), input, parsed, start);
             }
         } else {
             spec.onExit(this);
@@ -88,6 +140,112 @@ public final class Conversation {
         }
     }
 
+    /**
+     * Commit the parsed input to the contexts, then process it
+     */
+    private void commitParsed(ConversationNode node, CommandSource source, String input, ConversationNode.ParsedInput parsed, long start) throws ConversationException {
+        node.commit(parsed, getContext());
+        node.getMetrics().parse.record(System.nanoTime() - start);
+        processParsed(node, source, input);
+    }
+
+    /**
+     * Feed back the parsed input and route the Conversation on from the node
+     */
+    private void processParsed(ConversationNode node, CommandSource source, String input) throws ConversationException {
+        Converse.getConversationManager().logContext(this, node.getRoute(), getContext().getCurrent());
+
+        // feed back the input to the CommandSource
+        if (node.hasInputTemplate()) {
+            Text message = node.formatInput(getContext().getCurrent(), input);
+            send(source, message);
+        }
+
+        // process the input data
+        int transition = spec.getTransition(state);
+        if (transition == ConversationSpec.DYNAMIC) {
+            node.process(this);
+        } else {
+            nextState(transition);
+        }
+    }
+
+    /**
+     * Parse the input on a worker thread, then complete the parse and process it on the main thread. The
+     * Conversation is pending in the meantime. If the parse times out or the Conversation exits, the worker is
+     * interrupted.
+     */
+    private void processAsync(ConversationNode node, String input) {
+        Optional<CommandSource> source = getSource();
+        if (!source.isPresent()) {
+            spec.onExit(this);
+            Converse.getConversationManager().removeConversation(this);
+            return;
+        }
+
+        punchIn();
+        long start = System.nanoTime();
+        CommandSource src = source.get();
+        Executor executor = Converse.getConversationManager().getAsyncExecutor();
+        CompletableFuture<ConversationNode.ParsedInput> parse = new CompletableFuture<>();
+        FutureTask<ConversationNode.ParsedInput> task = new FutureTask<ConversationNode.ParsedInput>(() -> node.parseOffThread(src, input)) {
+            @Override
+            protected void done() {
+                try {
+                    parse.complete(get());
+                } catch (ExecutionException e) {
+                    parse.completeExceptionally(e.getCause());
+                } catch (CancellationException | InterruptedException e) {
+                    parse.completeExceptionally(e);
+                }
+            }
+        };
+        parse.whenComplete((result, error) -> {
+            if (error != null) {
+                task.cancel(true);
+            }
+        });
+        executor.execute(task);
+        await(parse, node.getParseTimeoutNanos(), () -> parsed(node, input, parse, start));
+    }
+
+    private void parsed(ConversationNode node, String input, CompletableFuture<ConversationNode.ParsedInput> parse, long start) {
+        Optional<CommandSource> source = getSource();
+        if (!source.isPresent()) {
+            spec.onExit(this);
+            Converse.getConversationManager().removeConversation(this);
+            return;
+        }
+
+        try {
+            ConversationNode.ParsedInput parsed = parse.join();
+            node.parseOnMainThread(source.get(), parsed);
+            commitParsed(node, source.get(), input, parsed, start);
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ArgumentParseException) {
+                parseFailed(source.get(), node, (ArgumentParseException) cause);
+            } else if (cause instanceof TimeoutException) {
+                send(source.get(), TIMED_OUT);
+            } else {
+                e.printStackTrace();
+            }
+        } catch (ArgumentParseException e) {
+            parseFailed(source.get(), node, e);
+        } catch (ConversationException e) {
+            e.printStackTrace();
+            spec.onExit(this);
+            Converse.getConversationManager().removeConversation(this);
+        }
+    }
+
+    private void parseFailed(CommandSource source, ConversationNode node, ArgumentParseException e) {
+        node.getMetrics().parseFailures.increment();
+        if (e.getText() != null) {
+            send(source, e.getText());
+        }
+    }
+
     public List<String> completeSafely(String input) {
         try {
             return complete(input);
@@ -102,7 +260,287 @@ public final class Conversation {
             process(input);
         } catch (ArgumentParseException e) {
             if (e.getText() != null) {
-                getSource().ifPresent(source -> source.sendMessage(e.getText()));
+                send(e.getText());
+            }
+        } catch (ConversationException e) {
+            e.printStackTrace();
+            spec.onExit(this);
+            Converse.getConversationManager().removeConversation(this);
+        }
+    }
+
+    /**
+     * Queue the input for processing, unless it exceeds the spec's input limits. Exit keywords are always queued.
+     * @return true if the Conversation was not already awaiting a drain and must be scheduled by the caller
+     */
+    boolean post(String input) {
+        if (spec.isExitKeyword(input)) {
+            while (!mailbox.offer(input)) {
+                mailbox.poll();
+            }
+            return scheduled.compareAndSet(false, true);
+        }
+
+        int maxLength = spec.getMaxInputLength();
+        if (maxLength > 0 && input.length() > maxLength) {
+            reject(TOO_LONG);
+            return false;
+        }
+        if (limiter != null && !limiter.tryAcquire(Converse.getConversationManager().now())) {
+            reject(TOO_FAST);
+            return false;
+        }
+        if (spec.coalescesInputs()) {
+            // a queued exit keyword still ends the Conversation
+            mailbox.removeIf(queued -> !spec.isExitKeyword(queued));
+        }
+        if (!mailbox.offer(input)) {
+            reject(TOO_MANY);
+            return false;
+        }
+        return scheduled.compareAndSet(false, true);
+    }
+
+    private void reject(Text reason) {
+        spec.getMetrics().rejected.increment();
+        if (spec.getInputPolicy() == InputPolicy.REJECT) {
+            getSource().ifPresent(source -> source.sendMessage(reason));
+        }
+    }
+
+    void drain() {
+        drain(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Process queued input, up to the given number of inputs
+     * @return The number of inputs processed
+     */
+    int drain(int limit) {
+        scheduled.set(false);
+        ConversationManager manager = Converse.getConversationManager();
+        if (awaiting != null && mailbox.stream().anyMatch(spec::isExitKeyword)) {
+            // the exit keyword does not wait for a pending parse, route or prompt
+            mailbox.clear();
+            awaiting.cancel(true);
+            try {
+                spec.onExit(this);
+                manager.removeConversation(this);
+            } catch (RuntimeException e) {
+                manager.failed(this, e);
+            }
+            return 1;
+        }
+
+        int processed = 0;
+        String input;
+        openStep();
+        try {
+            while (processed < limit && manager.isActive(this) && state != ConversationSpec.NONE && awaiting == null && (input = mailbox.poll()) != null) {
+                ConversationNode node = spec.getNode(state);
+                try {
+                    if (node.parsesAsync() && !spec.isExitKeyword(input)) {
+                        processAsync(node, input);
+                    } else {
+                        processSafely(input);
+                    }
+                } catch (RuntimeException e) {
+                    manager.failed(this, e);
+                }
+                processed++;
+            }
+        } finally {
+            closeStep();
+        }
+        return processed;
+    }
+
+    /**
+     * @return true if input is left in the mailbox that could be processed now
+     */
+    boolean hasProcessableInput() {
+        return awaiting == null && state != ConversationSpec.NONE && !mailbox.isEmpty();
+    }
+
+    /**
+     * Mark the Conversation as awaiting a drain
+     * @return true if it was not already and must be scheduled by the caller
+     */
+    boolean reschedule() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Send the first prompt of a Conversation that was started as part of a batch. Input received before now has
+     * been left in the mailbox.
+     * @param shared The first node's prompt, if it was rendered once for the whole batch
+     */
+    void begin(int first, @Nullable Text shared) {
+        punchIn();
+        openStep();
+        try {
+            try {
+                if (shared == null) {
+                    nextState(first);
+                } else {
+                    Optional<CommandSource> source = getSource();
+                    if (source.isPresent()) {
+                        state = first;
+                        Converse.getConversationManager().logRoute(this, spec.getNode(first).getRoute());
+                        send(source.get(), shared);
+                        prefetch(source.get());
+                    } else {
+                        spec.onExit(this);
+                        Converse.getConversationManager().removeConversation(this);
+                    }
+                }
+            } catch (RuntimeException e) {
+                Converse.getConversationManager().failed(this, e);
+            }
+            drain();
+        } finally {
+            closeStep();
+        }
+    }
+
+    /**
+     * Send a message to the CommandSource. While a step is being processed the message is held in the outbox until
+     * the step finishes. Must be called on the main thread.
+     */
+    void send(CommandSource source, Text message) {
+        if (stepDepth == 0) {
+            source.sendMessage(message);
+            return;
+        }
+        if (outbox == null) {
+            outbox = new ArrayList<>(4);
+        }
+        outbox.add(message);
+    }
+
+    /**
+     * Send a message to the CommandSource in order with the Conversation's own messages. Routers, prompts and
+     * callbacks should use this rather than messaging the CommandSource directly. Must be called on the main thread.
+     * @param message The message to send
+     */
+    public void send(Text message) {
+        getSource().ifPresent(source -> send(source, message));
+    }
+
+    /**
+     * Send the messages held in the outbox now, without finishing the step, so that they arrive ahead of the
+     * messages of any Conversation started later in the step
+     */
+    void flush() {
+        if (outbox == null) {
+            return;
+        }
+
+        List<Text> messages = outbox;
+        outbox = null;
+        getSource().ifPresent(source -> sendAll(source, messages));
+    }
+
+    private void openStep() {
+        stepDepth++;
+    }
+
+    /**
+     * Finish a step, flushing the outbox if it was the outermost one. Messages are joined by new lines, up to
+     * MAX_COALESCED per message.
+     */
+    private void closeStep() {
+        if (--stepDepth > 0 || outbox == null) {
+            return;
+        }
+
+        List<Text> messages = outbox;
+        outbox = null;
+        getSource().ifPresent(source -> sendAll(source, messages));
+    }
+
+    private static void sendAll(CommandSource source, List<Text> messages) {
+        for (int i = 0; i < messages.size(); i += MAX_COALESCED) {
+            List<Text> chunk = messages.subList(i, Math.min(i + MAX_COALESCED, messages.size()));
+            source.sendMessage(chunk.size() == 1 ? chunk.get(0) : Text.joinWith(Text.NEW_LINE, chunk));
+        }
+    }
+
+    /**
+     * Mark the Conversation as pending until the future completes. The ConversationManager hands the Conversation
+     * back on the main thread, where the continuation is run, or times out the future once the timeout has passed.
+     */
+    private void await(CompletableFuture<?> future, long timeoutNanos, Runnable continuation) {
+        ConversationManager manager = Converse.getConversationManager();
+        awaiting = future;
+        resume = continuation;
+        awaitStart = System.nanoTime();
+        awaitDeadline = DeadlineQueue.deadline(manager.now(), timeoutNanos);
+        manager.await(this);
+        future.whenComplete((result, error) -> manager.completed(this));
+    }
+
+    /**
+     * Wait for the AsyncConversationRouter to decide the next route
+     */
+    void awaitRoute(CompletableFuture<ConversationRoute> route, long timeoutNanos) {
+        await(route, timeoutNanos, () -> routeDecided(route));
+    }
+
+    static <T> CompletableFuture<T> failedFuture(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    long getAwaitDeadline() {
+        return awaitDeadline;
+    }
+
+    void timeout() {
+        CompletableFuture<?> future = awaiting;
+        if (future != null) {
+            future.completeExceptionally(new TimeoutException());
+        }
+    }
+
+    /**
+     * Run the continuation of the completed future, then process any input queued in the meantime
+     */
+    void resume() {
+        CompletableFuture<?> future = awaiting;
+        if (future == null || !future.isDone()) {
+            return;
+        }
+
+        Runnable continuation = resume;
+        awaiting = null;
+        resume = null;
+        openStep();
+        try {
+            try {
+                continuation.run();
+            } catch (RuntimeException e) {
+                Converse.getConversationManager().failed(this, e);
+            }
+            drain();
+        } finally {
+            closeStep();
+        }
+    }
+
+    private void routeDecided(CompletableFuture<ConversationRoute> route) {
+        spec.getNode(state).getMetrics().route.record(System.nanoTime() - awaitStart);
+        try {
+            nextRoute(route.join());
+        } catch (CompletionException | CancellationException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                send(TIMED_OUT);
+                nextState(state);
+            } else {
+                e.printStackTrace();
+                spec.onExit(this);
+                Converse.getConversationManager().removeConversation(this);
             }
         } catch (ConversationException e) {
             e.printStackTrace();
@@ -112,6 +550,14 @@ public final class Conversation {
     }
 
     void nextRoute(ConversationRoute next) throws ConversationException {
+        int nextState = spec.getState(next);
+        if (nextState == ConversationSpec.NONE && getSource().isPresent()) {
+            throw new ConversationException(Text.of("Reached an unknown node in the conversation: ", next));
+        }
+        nextState(nextState);
+    }
+
+    void nextState(int next) {
         Optional<CommandSource> commandSource = getSource();
         if (!commandSource.isPresent()) {
             spec.onExit(this);
@@ -119,27 +565,193 @@ public final class Conversation {
             return;
         }
 
-        if (next.isExit()) {
+        if (next == ConversationSpec.EXIT) {
             spec.onExit(this);
             Converse.getConversationManager().removeConversation(this);
             return;
         }
 
-        if (next.isTerminal()) {
+        if (next == ConversationSpec.END) {
             spec.onComplete(this);
             Converse.getConversationManager().removeConversation(this);
             return;
         }
 
         CommandSource source = commandSource.get();
-        Optional<ConversationNode> nextNode = spec.getNode(next);
+        CompletableFuture<Text> prefetched = takePrefetched(next);
+        state = next;
+        ConversationNode node = spec.getNode(state);
+        Converse.getConversationManager().logRoute(this, node.getRoute());
 
-        if (nextNode.isPresent()) {
-            node = nextNode.get();
-            Text prompt = node.getPrompt().apply(source, context);
-            source.sendMessage(prompt);
+        long start = System.nanoTime();
+        Optional<AsyncConversationPrompt> asyncPrompt = node.getAsyncPrompt();
+        if (asyncPrompt.isPresent()) {
+            CompletableFuture<Text> prompt = prefetched;
+            if (prompt == null) {
+                Executor executor = Converse.getConversationManager().getAsyncExecutor();
+                prompt = applyAsync(asyncPrompt.get(), source, getContext(), executor);
+            }
+            if (prompt.isDone()) {
+                promptReady(node, prompt, start);
+            } else {
+                CompletableFuture<Text> pending = prompt;
+                await(pending, node.getPromptTimeoutNanos(), () -> promptReady(node, pending, start));
+            }
         } else {
-            throw new ConversationException(Text.of("Reached an unknown node in the conversation: ", next));
+            Text prompt = node.getPrompt().apply(source, getContext());
+            node.getMetrics().prompt.record(System.nanoTime() - start);
+            send(source, prompt);
+        }
+        prefetch(source);
+    }
+
+    private void promptReady(ConversationNode node, CompletableFuture<Text> prompt, long start) {
+        Optional<CommandSource> source = getSource();
+        if (!source.isPresent()) {
+            return;
+        }
+
+        Text text;
+        try {
+            text = prompt.join();
+        } catch (CompletionException | CancellationException e) {
+            if (!(e.getCause() instanceof TimeoutException)) {
+                e.printStackTrace();
+            }
+            if (node.getPrompt() == ConversationPrompt.EMPTY) {
+                return;
+            }
+            text = node.getPrompt().apply(source.get(), getContext());
+        }
+        node.getMetrics().prompt.record(System.nanoTime() - start);
+        send(source.get(), text);
+    }
+
+    /**
+     * Start the async prompt, turning a synchronous failure into a failed future
+     */
+    private static CompletableFuture<Text> applyAsync(AsyncConversationPrompt prompt, CommandSource source, ContextCollection contexts, Executor executor) {
+        try {
+            CompletableFuture<Text> future = prompt.apply(source, contexts, executor);
+            return future != null ? future : failedFuture(new NullPointerException("AsyncConversationPrompt returned null"));
+        } catch (RuntimeException e) {
+            return failedFuture(e);
+        }
+    }
+
+    /**
+     * Start computing the async prompts of the nodes that the current node may route to. The prompts are given a
+     * snapshot of the contexts, as they run while the current node's input is parsed and committed.
+     */
+    private void prefetch(CommandSource source) {
+        int[] targets = spec.getPrefetch(state);
+        if (targets.length == 0) {
+            return;
+        }
+
+        Executor executor = Converse.getConversationManager().getAsyncExecutor();
+        ContextCollection snapshot = getContext().snapshot();
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Text>[] futures = new CompletableFuture[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            AsyncConversationPrompt prompt = spec.getNode(targets[i]).getAsyncPrompt().get();
+            futures[i] = applyAsync(prompt, source, snapshot, executor);
+        }
+        prefetchedFrom = state;
+        prefetched = futures;
+    }
+
+    /**
+     * @return The prompt prefetched for the given state, if the Conversation is moving on from the state that
+     * prefetched it
+     */
+    @Nullable
+    private CompletableFuture<Text> takePrefetched(int next) {
+        CompletableFuture<Text>[] futures = prefetched;
+        if (futures == null) {
+            return null;
+        }
+
+        prefetched = null;
+        CompletableFuture<Text> taken = null;
+        int[] targets = prefetchedFrom == state ? spec.getPrefetch(state) : null;
+        for (int i = 0; i < futures.length; i++) {
+            if (taken == null && targets != null && targets[i] == next) {
+                taken = futures[i];
+            } else {
+                futures[i].cancel(true);
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Restore a context recovered from persistent storage, as if it had been parsed by the given node
+     */
+    void restoreContext(ConversationNode node, ConversationContext restored) {
+        getContext().putContext(node.getRoute(), restored, node.getRetention());
+        getContext().setCurrent(node.getRoute(), restored);
+    }
+
+    /**
+     * Replace the ContextCollection with its encoded form. Conversations with queued input, or with values that
+     * have no registered ValueCodec, are left as they are.
+     * @return true if the Conversation was passivated
+     */
+    synchronized boolean passivate(ValueCodecs codecs) {
+        if (passivated != null || awaiting != null || scheduled.get() || !mailbox.isEmpty() || !codecs.supports(context)) {
+            return false;
+        }
+        try {
+            passivated = codecs.encode(context);
+            context = null;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * @return The encoded ContextCollection, or null if it holds values that have no registered ValueCodec
+     */
+    synchronized byte[] encodeContext(ValueCodecs codecs) throws IOException {
+        if (passivated != null) {
+            return passivated;
+        }
+        return codecs.supports(context) ? codecs.encode(context) : null;
+    }
+
+    /**
+     * Start out passivated with a ContextCollection encoded elsewhere, such as on another server
+     */
+    synchronized void restorePassivated(byte[] encoded) {
+        passivated = encoded;
+        context = null;
+    }
+
+    boolean isPassivated() {
+        return passivated != null;
+    }
+
+    /**
+     * Decode the ContextCollection if the Conversation has been passivated
+     */
+    void activate() {
+        if (passivated == null) {
+            return;
+        }
+        synchronized (this) {
+            if (passivated != null) {
+                ConversationManager manager = Converse.getConversationManager();
+                try {
+                    context = manager.getCodecs().decode(passivated, spec);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                passivated = null;
+                manager.activated(this);
+            }
         }
     }
 
@@ -152,15 +764,32 @@ public final class Conversation {
     }
 
     public ContextCollection getContext() {
+        activate();
         return context;
     }
 
+    /**
+     * @return The node currently waiting for input, or null if the Conversation has not yet been prompted
+     */
+    @Nullable
+    ConversationNode getCurrentNode() {
+        return state >= 0 ? spec.getNode(state) : null;
+    }
+
     ConversationSpec getSpec() {
         return spec;
     }
 
-    boolean hasExpired() {
-        return spec.getExpireTime() > 0 && stopwatch.elapsed(spec.getTimeUnit()) >= spec.getExpireTime();
+    boolean canExpire() {
+        return spec.getExpireNanos() > 0;
+    }
+
+    long getDeadline() {
+        return DeadlineQueue.deadline(lastInput, spec.getExpireNanos());
+    }
+
+    long getLastInput() {
+        return lastInput;
     }
 
     boolean suppressMessages() {
@@ -168,6 +797,23 @@ public final class Conversation {
     }
 
     private void punchIn() {
-        stopwatch.reset().start();
+        lastInput = Converse.getConversationManager().now();
+    }
+
+    /**
+     * A weak reference to the CommandSource that leads back to its Conversation once it has been enqueued
+     */
+    static final class SourceReference extends WeakReference<CommandSource> {
+
+        private final Conversation conversation;
+
+        private SourceReference(CommandSource source, Conversation conversation, ReferenceQueue<CommandSource> queue) {
+            super(source, queue);
+            this.conversation = conversation;
+        }
+
+        Conversation getConversation() {
+            return conversation;
+        }
     }
 }
@@ -1,101 +1,371 @@
 package me.dags.converse;
 
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Maps;
+import com.google.common.collect.ImmutableList;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.TranslatableText;
 
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Similar to a CommandContext, the ConversationContext holds the arguments parsed from a CommandSource's input.
+ *
+ * Values for keys declared by the producing ConversationNode are stored in slots laid out by the node's schema.
+ * Integer, double and boolean parameters declared through the node builder's typed methods are held unboxed and
+ * may be read without boxing via the ContextSlot accessors. Any other keys fall back to a multimap.
  */
 public final class ConversationContext {
 
-    private final ArrayListMultimap<String, Object> values;
+    private static final Object PRIMITIVE = new Object();
+
+    private final ContextSchema schema;
+    private final Object[] values;
+    private final long[] primitives;
+    private ArrayListMultimap<String, Object> extra = null;
 
     public ConversationContext() {
-        values = ArrayListMultimap.create();
+        this(ContextSchema.EMPTY);
+    }
+
+    ConversationContext(ContextSchema schema) {
+        this.schema = schema;
+        this.values = new Object[schema.size()];
+        this.primitives = new long[schema.size()];
     }
 
     public boolean hasAny(String key) {
-        return values.containsKey(key);
+        int slot = schema.indexOf(key);
+        if (slot < 0) {
+            return extra != null && extra.containsKey(key);
+        }
+        return values[slot] != null;
     }
 
     public <T> Optional<T> getFirst(Text key) {
-        return getFirst(textToArgKey(key));
+        return getFirst(schema.argKey(key));
     }
 
     public <T> Optional<T> getFirst(String key) {
-        List<Object> list = values.get(key);
-        if (list.size() > 0) {
-            return Optional.ofNullable(cast(list.get(0)));
+        int slot = schema.indexOf(key);
+        if (slot < 0) {
+            return getFirstExtra(key);
         }
-        return Optional.empty();
+        return Optional.ofNullable(cast(first(slot)));
+    }
+
+    public <T> Optional<T> getFirst(ContextSlot slot) {
+        if (slot.getSchema() != schema) {
+            return getFirst(slot.getKey());
+        }
+        return Optional.ofNullable(cast(first(slot.getIndex())));
     }
 
     public <T> Optional<T> getLast(Text key) {
-        return getLast(textToArgKey(key));
+        return getLast(schema.argKey(key));
     }
 
     public <T> Optional<T> getLast(String key) {
-        List<Object> list = values.get(key);
-        if (list.isEmpty()) {
-            return Optional.empty();
+        int slot = schema.indexOf(key);
+        if (slot < 0) {
+            return getLastExtra(key);
+        }
+        return Optional.ofNullable(cast(last(slot)));
+    }
+
+    public <T> Optional<T> getLast(ContextSlot slot) {
+        if (slot.getSchema() != schema) {
+            return getLast(slot.getKey());
         }
-        return Optional.ofNullable(cast(list.get(list.size() - 1)));
+        return Optional.ofNullable(cast(last(slot.getIndex())));
     }
 
     public <T> Collection<T> getAll(String key) {
-        return Collections.unmodifiableCollection(cast(values.get(key)));
+        int slot = schema.indexOf(key);
+        if (slot < 0) {
+            return extra == null ? Collections.emptyList() : Collections.unmodifiableCollection(cast(extra.get(key)));
+        }
+        return cast(all(slot));
     }
 
     public <T> Collection<T> getAll(Text key) {
-        return getAll(textToArgKey(key));
+        return getAll(schema.argKey(key));
+    }
+
+    public <T> Collection<T> getAll(ContextSlot slot) {
+        if (slot.getSchema() != schema) {
+            return getAll(slot.getKey());
+        }
+        return cast(all(slot.getIndex()));
+    }
+
+    /**
+     * Get the first value of an integer slot without boxing
+     * @param slot The slot to read
+     * @param def The value returned if the slot holds no integer
+     * @return The slot's value or the default
+     */
+    public int getInt(ContextSlot slot, int def) {
+        if (isPrimitive(slot, ContextSlot.Type.INTEGER)) {
+            return (int) primitives[slot.getIndex()];
+        }
+        Object value = getFirst(slot).orElse(null);
+        return value instanceof Number ? ((Number) value).intValue() : def;
+    }
+
+    /**
+     * Get the first value of a double slot without boxing
+     * @param slot The slot to read
+     * @param def The value returned if the slot holds no double
+     * @return The slot's value or the default
+     */
+    public double getDouble(ContextSlot slot, double def) {
+        if (isPrimitive(slot, ContextSlot.Type.DOUBLE)) {
+            return Double.longBitsToDouble(primitives[slot.getIndex()]);
+        }
+        Object value = getFirst(slot).orElse(null);
+        return value instanceof Number ? ((Number) value).doubleValue() : def;
+    }
+
+    /**
+     * Get the first value of a boolean slot without boxing
+     * @param slot The slot to read
+     * @param def The value returned if the slot holds no boolean
+     * @return The slot's value or the default
+     */
+    public boolean getBoolean(ContextSlot slot, boolean def) {
+        if (isPrimitive(slot, ContextSlot.Type.BOOLEAN)) {
+            return primitives[slot.getIndex()] != 0L;
+        }
+        Object value = getFirst(slot).orElse(null);
+        return value instanceof Boolean ? (Boolean) value : def;
     }
 
     public void putArg(String key, Object value) {
         checkNotNull(value, "value");
-        values.put(key, value);
+        int slot = schema.indexOf(key);
+        if (slot < 0) {
+            putExtra(key, value);
+        } else {
+            put(slot, value);
+        }
     }
 
     public void putArg(Text key, Object value) {
-        putArg(textToArgKey(key), value);
+        putArg(schema.argKey(key), value);
     }
 
     <T> Stream<T> stream(Text key) {
-        return values.get(textToArgKey(key)).stream().map(ConversationContext::cast);
+        return this.<T>getAll(key).stream();
     }
 
     <T> Stream<T> stream(String key) {
-        return values.get(key).stream().map(ConversationContext::cast);
+        return this.<T>getAll(key).stream();
     }
 
     void putAll(String key, Iterable<Object> value) {
         checkNotNull(value, "value");
-        values.putAll(key, value);
+        for (Object o : value) {
+            putArg(key, o);
+        }
     }
 
     void putAll(Text key, Iterable<Object> value) {
-        putAll(textToArgKey(key), value);
-    }
-
-    Map<String, Object> toMap() {
-        Map<String, Object> map = Maps.newHashMap();
-        for (String key : values.keySet()) {
-            List<Object> vals = values.get(key);
-            if (vals.size() == 1) {
-                Object val = vals.get(0);
-                map.put(key, val);
-            } else {
-                map.put(key, vals);
+        putAll(schema.argKey(key), value);
+    }
+
+    /**
+     * Store a single value into an empty slot, as parsed by a FastPath
+     */
+    void putValue(int slot, Object value) {
+        put(slot, checkNotNull(value, "value"));
+    }
+
+    void putInt(int slot, int value) {
+        primitives[slot] = value;
+        values[slot] = PRIMITIVE;
+    }
+
+    void putDouble(int slot, double value) {
+        primitives[slot] = Double.doubleToRawLongBits(value);
+        values[slot] = PRIMITIVE;
+    }
+
+    void putBoolean(int slot, boolean value) {
+        primitives[slot] = value ? 1L : 0L;
+        values[slot] = PRIMITIVE;
+    }
+
+    void putAll(int slot, Iterable<Object> value) {
+        checkNotNull(value, "value");
+        for (Object o : value) {
+            put(slot, checkNotNull(o, "value"));
+        }
+    }
+
+    /**
+     * @return The value held for the slot, or a List if it holds several, as presented to TextTemplates
+     */
+    Object getArg(ContextSlot slot) {
+        if (slot.getSchema() != schema) {
+            return getArg(slot.getKey());
+        }
+        Object value = values[slot.getIndex()];
+        if (value instanceof Values) {
+            return Collections.unmodifiableList((Values) value);
+        }
+        return box(slot.getIndex(), value);
+    }
+
+    Object getArg(String key) {
+        return arg(getAll(key));
+    }
+
+    /**
+     * Visit every value held by the context, in slot order followed by any keys outside the schema
+     */
+    void forEachArg(BiConsumer<String, Object> consumer) {
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != null) {
+                String key = schema.getSlot(slot).getKey();
+                for (Object value : all(slot)) {
+                    consumer.accept(key, value);
+                }
+            }
+        }
+        if (extra != null) {
+            extra.entries().forEach(entry -> consumer.accept(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private void put(int slot, Object value) {
+        Object current = values[slot];
+        if (current == null) {
+            if (!putPrimitive(slot, value)) {
+                values[slot] = value;
+            }
+        } else if (current instanceof Values) {
+            ((Values) current).add(value);
+        } else {
+            Values list = new Values();
+            list.add(box(slot, current));
+            list.add(value);
+            values[slot] = list;
+        }
+    }
+
+    private boolean putPrimitive(int slot, Object value) {
+        switch (schema.getSlot(slot).getType()) {
+            case INTEGER:
+                if (value instanceof Integer) {
+                    primitives[slot] = (Integer) value;
+                    values[slot] = PRIMITIVE;
+                    return true;
+                }
+                return false;
+            case DOUBLE:
+                if (value instanceof Double) {
+                    primitives[slot] = Double.doubleToRawLongBits((Double) value);
+                    values[slot] = PRIMITIVE;
+                    return true;
+                }
+                return false;
+            case BOOLEAN:
+                if (value instanceof Boolean) {
+                    primitives[slot] = (Boolean) value ? 1L : 0L;
+                    values[slot] = PRIMITIVE;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isPrimitive(ContextSlot slot, ContextSlot.Type type) {
+        return slot.getSchema() == schema && slot.getType() == type && values[slot.getIndex()] == PRIMITIVE;
+    }
+
+    private Object box(int slot, Object value) {
+        if (value != PRIMITIVE) {
+            return value;
+        }
+        switch (schema.getSlot(slot).getType()) {
+            case INTEGER:
+                return (int) primitives[slot];
+            case DOUBLE:
+                return Double.longBitsToDouble(primitives[slot]);
+            case BOOLEAN:
+                return primitives[slot] != 0L;
+            default:
+                return null;
+        }
+    }
+
+    private static Object arg(Collection<?> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        return values.size() == 1 ? values.iterator().next() : values;
+    }
+
+    private Object first(int slot) {
+        Object value = values[slot];
+        if (value instanceof Values) {
+            return ((Values) value).get(0);
+        }
+        return box(slot, value);
+    }
+
+    private Object last(int slot) {
+        Object value = values[slot];
+        if (value instanceof Values) {
+            Values list = (Values) value;
+            return list.get(list.size() - 1);
+        }
+        return box(slot, value);
+    }
+
+    private List<Object> all(int slot) {
+        Object value = values[slot];
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (value instanceof Values) {
+            return Collections.unmodifiableList((Values) value);
+        }
+        return ImmutableList.of(box(slot, value));
+    }
+
+    private <T> Optional<T> getFirstExtra(String key) {
+        if (extra != null) {
+            List<Object> list = extra.get(key);
+            if (list.size() > 0) {
+                return Optional.ofNullable(cast(list.get(0)));
             }
         }
-        return map;
+        return Optional.empty();
+    }
+
+    private <T> Optional<T> getLastExtra(String key) {
+        if (extra != null) {
+            List<Object> list = extra.get(key);
+            if (!list.isEmpty()) {
+                return Optional.ofNullable(cast(list.get(list.size() - 1)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void putExtra(String key, Object value) {
+        if (extra == null) {
+            extra = ArrayListMultimap.create();
+        }
+        extra.put(key, value);
     }
 
     @SuppressWarnings("unchecked")
@@ -103,7 +373,7 @@ public final class ConversationContext {
         return (T) in;
     }
 
-    private static String textToArgKey(@Nullable Text key) {
+    static String textToArgKey(@Nullable Text key) {
         if (key == null) {
             return null;
         }
@@ -114,4 +384,9 @@ public final class ConversationContext {
 
         return key.toPlain();
     }
+
+    /**
+     * Holds multiple values for a single slot, distinguishing them from a single value that is itself a List
+     */
+    private static final class Values extends ArrayList<Object> {}
 }
@@ -0,0 +1,54 @@
+package me.dags.converse;
+
+import java.io.*;
+
+/**
+ * The encoded form of a Conversation handed to a ConversationStore: a version byte, the time it was saved, the id of
+ * its ConversationSpec, the route of the node it was waiting on, and its ContextCollection in the same encoding used
+ * for passivation.
+ *
+ * Only the Conversations of CommandSources that join are loaded, and their ContextCollection is not decoded as it
+ * is loaded: the resumed Conversation starts out passivated and its contexts are decoded once they are needed.
+ */
+final class ConversationHandoff {
+
+    private static final byte VERSION = 1;
+
+    final long savedAt;
+    final String specId;
+    final String route;
+    final byte[] contexts;
+
+    private ConversationHandoff(long savedAt, String specId, String route, byte[] contexts) {
+        this.savedAt = savedAt;
+        this.specId = specId;
+        this.route = route;
+        this.contexts = contexts;
+    }
+
+    static byte[] write(String specId, ConversationRoute route, byte[] contexts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(contexts.length + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(specId);
+        out.writeUTF(route.toString());
+        out.writeInt(contexts.length);
+        out.write(contexts);
+        return bytes.toByteArray();
+    }
+
+    static ConversationHandoff read(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported conversation handoff version: " + version);
+        }
+        long savedAt = in.readLong();
+        String specId = in.readUTF();
+        String route = in.readUTF();
+        byte[] contexts = new byte[in.readInt()];
+        in.readFully(contexts);
+        return new ConversationHandoff(savedAt, specId, route, contexts);
+    }
+}
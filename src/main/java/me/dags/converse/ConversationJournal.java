@@ -0,0 +1,351 @@
+package me.dags.converse;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of Conversation progress, used to recover in-flight Conversations after a restart or crash.
+ *
+ * Records are queued from the main thread and written by a single background thread, which writes and forces
+ * each batch of queued records to disk together (group commit). Every record is framed with its length and a
+ * CRC32 checksum so that a torn write at the tail of the journal is detected and discarded on recovery.
+ *
+ * The writer thread tracks the records belonging to live Conversations. Once the journal has grown past its
+ * compaction threshold, and to more than twice its size after the previous compaction, it is rewritten to contain
+ * only those records.
+ *
+ * Every record carries the wall-clock time it was appended, and a START record carries the timeout of its
+ * ConversationSpec. A Conversation that has seen no record for longer than its timeout is stale: it is dropped when
+ * the journal is opened or compacted, so that the state of CommandSources that never return does not accumulate.
+ */
+final class ConversationJournal {
+
+    static final byte START = 0;
+    static final byte CONTEXT = 1;
+    static final byte ROUTE = 2;
+    static final byte END = 3;
+
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+    private static final Record STOP = new Record(END, "", "", null, 0L);
+
+    private final Path file;
+    private final long threshold;
+    private final BlockingQueue<Record> queue = new LinkedBlockingQueue<>();
+    private final Map<String, List<Record>> live = new LinkedHashMap<>();
+    private final Map<String, Recovered> recovered = new HashMap<>();
+    private final Thread writer;
+
+    private FileChannel channel = null;
+    private long size = 0L;
+    private long compactedSize = 0L;
+
+    private ConversationJournal(Path file, long threshold) {
+        this.file = file;
+        this.threshold = threshold;
+        this.writer = new Thread(this::run, "converse-journal");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Open the journal, reading back any Conversations that were still in progress when it was last written
+     */
+    static ConversationJournal open(Path file, long compactionThreshold) throws IOException {
+        ConversationJournal journal = new ConversationJournal(file, compactionThreshold);
+        journal.recover();
+        journal.compact();
+        journal.writer.start();
+        return journal;
+    }
+
+    /**
+     * @return The state of each Conversation that was in progress when the journal was last written, keyed by the
+     * identifier of its CommandSource
+     */
+    Map<String, Recovered> getRecovered() {
+        return recovered;
+    }
+
+    void append(byte type, String identifier, String value, @Nullable byte[] payload) {
+        queue.offer(new Record(type, identifier, value, payload, System.currentTimeMillis()));
+    }
+
+    /**
+     * Journal the start of a Conversation
+     * @param timeoutMillis The timeout of the Conversation's spec, or zero if it never expires
+     */
+    void appendStart(String identifier, String specId, long timeoutMillis) {
+        byte[] timeout = ByteBuffer.allocate(8).putLong(timeoutMillis).array();
+        append(START, identifier, specId, timeout);
+    }
+
+    /**
+     * Write any queued records and stop the writer thread
+     */
+    void close() {
+        queue.offer(STOP);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<Record> batch = new ArrayList<>();
+        boolean running = true;
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+                // check for STOP first, so that the writer still exits if the batch fails to write
+                running = !batch.remove(STOP);
+                write(batch);
+                if (size > threshold && size > compactedSize * 2) {
+                    compact();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (IOException e) {
+                e.printStackTrace();
+            } finally {
+                batch.clear();
+            }
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void write(List<Record> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Record record : batch) {
+            track(record);
+            bytes.write(frame(record));
+        }
+        if (bytes.size() > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            size += bytes.size();
+        }
+    }
+
+    private void track(Record record) {
+        List<Record> records;
+        switch (record.type) {
+            case START:
+                records = new ArrayList<>();
+                records.add(record);
+                live.put(record.identifier, records);
+                break;
+            case CONTEXT:
+                records = live.get(record.identifier);
+                if (records != null) {
+                    records.add(record);
+                }
+                break;
+            case ROUTE:
+                records = live.get(record.identifier);
+                if (records != null) {
+                    records.removeIf(r -> r.type == ROUTE);
+                    records.add(record);
+                }
+                break;
+            case END:
+                live.remove(record.identifier);
+                break;
+        }
+    }
+
+    private void recover() throws IOException {
+        if (Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                Record record;
+                while ((record = readRecord(in)) != null) {
+                    track(record);
+                }
+            }
+        }
+
+        dropStale();
+        for (List<Record> records : live.values()) {
+            Recovered state = new Recovered(records.get(0).value, lastTime(records), timeout(records));
+            for (Record record : records) {
+                if (record.type == CONTEXT) {
+                    state.contexts.add(record);
+                } else if (record.type == ROUTE) {
+                    state.route = record.value;
+                }
+            }
+            recovered.put(records.get(0).identifier, state);
+        }
+    }
+
+    /**
+     * Forget the Conversations that have seen no record for longer than their timeout
+     */
+    private void dropStale() {
+        long now = System.currentTimeMillis();
+        live.values().removeIf(records -> isStale(lastTime(records), timeout(records), now));
+    }
+
+    static boolean isStale(long lastTime, long timeoutMillis, long now) {
+        return timeoutMillis > 0 && now - lastTime > timeoutMillis;
+    }
+
+    private static long lastTime(List<Record> records) {
+        long time = 0L;
+        for (Record record : records) {
+            time = Math.max(time, record.time);
+        }
+        return time;
+    }
+
+    private static long timeout(List<Record> records) {
+        Record start = records.get(0);
+        return start.payload != null && start.payload.length == 8 ? ByteBuffer.wrap(start.payload).getLong() : 0L;
+    }
+
+    private void compact() throws IOException {
+        dropStale();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (List<Record> records : live.values()) {
+                for (Record record : records) {
+                    ByteBuffer buffer = ByteBuffer.wrap(frame(record));
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+            }
+            out.force(true);
+        }
+
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        size = compactedSize = channel.size();
+    }
+
+    private static byte[] frame(Record record) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeByte(record.type);
+        out.writeUTF(record.identifier);
+        out.writeUTF(record.value);
+        if (record.payload == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(record.payload.length);
+            out.write(record.payload);
+        }
+        out.writeLong(record.time);
+
+        byte[] data = body.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(data.length + 8);
+        DataOutputStream frame = new DataOutputStream(framed);
+        frame.writeInt(data.length);
+        frame.writeInt((int) crc.getValue());
+        frame.write(data);
+        return framed.toByteArray();
+    }
+
+    /**
+     * @return The next intact record, or null at the end of the journal or at the first torn/corrupt record
+     */
+    @Nullable
+    private static Record readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length < 0 || length > MAX_RECORD_SIZE) {
+                return null;
+            }
+
+            byte[] data = new byte[length];
+            in.readFully(data);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+
+            DataInputStream body = new DataInputStream(new ByteArrayInputStream(data));
+            byte type = body.readByte();
+            String identifier = body.readUTF();
+            String value = body.readUTF();
+            int payloadLength = body.readInt();
+            byte[] payload = null;
+            if (payloadLength >= 0) {
+                payload = new byte[payloadLength];
+                body.readFully(payload);
+            }
+            long time = body.readLong();
+            return new Record(type, identifier, value, payload, time);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    static final class Record {
+
+        final byte type;
+        final String identifier;
+        final String value;
+        final byte[] payload;
+        final long time;
+
+        private Record(byte type, String identifier, String value, @Nullable byte[] payload, long time) {
+            this.type = type;
+            this.identifier = identifier;
+            this.value = value;
+            this.payload = payload;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The journaled state of an in-progress Conversation. Contexts are kept in their encoded form until the
+     * Conversation is resumed.
+     */
+    static final class Recovered {
+
+        final String specId;
+        final long lastTime;
+        final long timeoutMillis;
+        final List<Record> contexts = new ArrayList<>();
+        String route = null;
+
+        private Recovered(String specId, long lastTime, long timeoutMillis) {
+            this.specId = specId;
+            this.lastTime = lastTime;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        boolean isStale(long now) {
+            return ConversationJournal.isStale(lastTime, timeoutMillis, now);
+        }
+    }
+}
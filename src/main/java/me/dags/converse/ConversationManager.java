@@ -1,27 +1,79 @@
 package me.dags.converse;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.scheduler.Task;
-import org.spongepowered.api.text.channel.MutableMessageChannel;
+import org.spongepowered.api.text.channel.MessageChannel;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public final class ConversationManager {
 
+    private static final long HANDOFF_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5L);
+
     private final Map<String, Conversation> conversations = Maps.newConcurrentMap();
+    private final Set<String> suppressed = Sets.newConcurrentHashSet();
+    private final Queue<Conversation> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Conversation> deferred = new ArrayDeque<>();
+    private final ReferenceQueue<CommandSource> collected = new ReferenceQueue<>();
+    private final DeadlineQueue expiry = new DeadlineQueue(Conversation::getDeadline);
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<StartBatch> batches = new ConcurrentLinkedQueue<>();
+    private final Queue<Conversation> completed = new ConcurrentLinkedQueue<>();
+    private final DeadlineQueue timeouts = new DeadlineQueue(Conversation::getAwaitDeadline);
+    private final DeadlineQueue idle = new DeadlineQueue(conversation -> DeadlineQueue.deadline(conversation.getLastInput(), this.passivationNanos));
+    private final Map<String, ConversationSpec> specs = Maps.newConcurrentMap();
+    private final Map<String, ConversationJournal.Recovered> recovered = Maps.newConcurrentMap();
+    private final Map<String, HandoffPoll> handoffs = Maps.newConcurrentMap();
+    private final ValueCodecs codecs = new ValueCodecs();
+    private final ConversationMetrics metrics = new ConversationMetrics();
+    private final List<Runnable> exporters = new CopyOnWriteArrayList<>();
+
+    private ConversationJournal journal = null;
+    private volatile long passivationNanos = 0L;
+    private volatile Executor asyncExecutor = null;
+    private volatile ConversationStore store = null;
+    private volatile boolean stopping = false;
+    private int inputBudget = Integer.MAX_VALUE;
+    private Ticker ticker = Ticker.systemTicker();
+
+    private Object plugin = null;
+    private Task expiryTask = null;
+    private long expiryPrecision = 20L;
 
     ConversationManager(){}
 
     public Optional<Conversation> getConversation(CommandSource source) {
-        return Optional.ofNullable(conversations.get(source.getIdentifier()));
+        return getConversation(source.getIdentifier());
     }
 
     public Optional<Conversation> getConversation(String identifier) {
-        return Optional.ofNullable(conversations.get(identifier));
+        Conversation conversation = conversations.get(identifier);
+        if (conversation != null) {
+            conversation.activate();
+        }
+        return Optional.ofNullable(conversation);
     }
 
     public Conversation removeConversation(Conversation conversation) {
@@ -29,34 +81,677 @@ public final class ConversationManager {
     }
 
     public Conversation removeConversation(String identifier) {
-        return conversations.remove(identifier);
+        Conversation conversation = conversations.remove(identifier);
+        if (conversation != null) {
+            removed(conversation);
+        }
+        return conversation;
+    }
+
+    /**
+     * Register a batch of Conversations at once
+     */
+    void addConversations(List<Conversation> batch) {
+        for (Conversation conversation : batch) {
+            String identifier = conversation.getIdentifier();
+            replaced(conversations.put(identifier, conversation), conversation);
+            if (conversation.suppressMessages()) {
+                suppressed.add(identifier);
+            } else {
+                suppressed.remove(identifier);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        ConversationSpec spec = batch.get(0).getSpec();
+        metrics.track(spec);
+        spec.getMetrics().started.add(batch.size());
+        spec.getMetrics().active.add(batch.size());
+        if (batch.get(0).canExpire()) {
+            expiry.scheduleAll(batch);
+        }
+        if (passivationNanos > 0) {
+            idle.scheduleAll(batch);
+        }
     }
 
     public void addConversation(Conversation conversation) {
-        conversations.put(conversation.getIdentifier(), conversation);
+        String identifier = conversation.getIdentifier();
+        replaced(conversations.put(identifier, conversation), conversation);
+        if (conversation.suppressMessages()) {
+            suppressed.add(identifier);
+        } else {
+            suppressed.remove(identifier);
+        }
+        metrics.track(conversation.getSpec());
+        conversation.getSpec().getMetrics().started.increment();
+        conversation.getSpec().getMetrics().active.increment();
+        if (conversation.canExpire()) {
+            expiry.schedule(conversation);
+        }
+        if (passivationNanos > 0) {
+            idle.schedule(conversation);
+        }
     }
 
-    void removeFromChannel(MutableMessageChannel channel) {
-        conversations.values().stream()
-                .filter(Conversation::suppressMessages)
-                .map(Conversation::getSource)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .forEach(channel::removeMember);
+    /**
+     * Set how often (in server ticks) Conversations are checked for expiry. Checking is proportional to the number
+     * of Conversations that have actually expired, so this may be as low as a single tick.
+     * The default is 20 ticks.
+     * @param ticks The number of ticks between expiry checks
+     */
+    public void setExpiryPrecision(long ticks) {
+        Preconditions.checkArgument(ticks > 0, "Expiry precision must be at least one tick");
+        this.expiryPrecision = ticks;
+        if (plugin != null) {
+            scheduleExpiry();
+        }
     }
 
-    void tickConversations(Converse plugin) {
-        List<Conversation> expired = conversations.values().stream()
-                .filter(Conversation::hasExpired)
-                .collect(Collectors.toList());
+    public ConversationMetrics getMetrics() {
+        return metrics;
+    }
 
-        Task.builder().execute(() -> expired.stream()
-                .map(this::removeConversation)
-                .forEach(conversation -> conversation.getSpec().onExpire(conversation)))
+    /**
+     * Periodically pass a snapshot of the ConversationMetrics to the exporter
+     * @param exporter The MetricsExporter
+     * @param interval The time between exports
+     * @param unit The unit of the interval
+     */
+    public void addMetricsExporter(MetricsExporter exporter, long interval, TimeUnit unit) {
+        Preconditions.checkNotNull(exporter);
+        Preconditions.checkArgument(interval > 0, "Interval must be greater than zero");
+        Runnable schedule = () -> Task.builder()
+                .async()
+                .interval(interval, unit)
+                .execute(() -> exporter.export(metrics.snapshot()))
                 .submit(plugin);
+        exporters.add(schedule);
+        if (plugin != null) {
+            schedule.run();
+        }
+    }
+
+    /**
+     * Passivate Conversations that have received no input for the given time, encoding their contexts into a
+     * compact binary form until they are next accessed. Only Conversations whose values all have a registered
+     * ValueCodec are passivated.
+     * Passivation is disabled by default, or if the time given is zero.
+     * @param time The idle time
+     * @param unit The unit of the idle time
+     */
+    public void setPassivationThreshold(long time, TimeUnit unit) {
+        Preconditions.checkArgument(time >= 0, "Time cannot be negative");
+        boolean enabled = passivationNanos > 0;
+        passivationNanos = unit.toNanos(time);
+        if (passivationNanos == 0) {
+            idle.clear();
+        } else if (!enabled) {
+            conversations.values().forEach(idle::schedule);
+        }
+    }
+
+    /**
+     * Set the Executor provided to AsyncConversationRouters and AsyncConversationPrompts for their blocking work. By default a cached pool of
+     * daemon threads is used.
+     * @param executor The Executor
+     */
+    public void setAsyncExecutor(Executor executor) {
+        Preconditions.checkNotNull(executor);
+        this.asyncExecutor = executor;
+    }
+
+    /**
+     * Hand off Conversations between servers through the store. When a CommandSource disconnects mid-conversation,
+     * its Conversation is saved to the store if its ConversationSpec has an id and all of its values have a
+     * registered ValueCodec. The Conversation is resumed on whichever server sharing the store the CommandSource
+     * joins next, provided that server has a ConversationSpec with the same id and it has not expired in the
+     * meantime. A proxy may connect the CommandSource to the next server before the previous one has saved the
+     * Conversation, so the joining server keeps checking the store for a few seconds.
+     * @param store The ConversationStore
+     */
+    public void setConversationStore(ConversationStore store) {
+        Preconditions.checkNotNull(store);
+        this.store = store;
+    }
+
+    /**
+     * Limit the number of inputs processed per tick across all Conversations. The budget is shared round-robin, one
+     * input per Conversation per turn, so a CommandSource flooding input cannot starve the others. Conversations left
+     * with queued input once the budget is spent keep their place for the next tick. Input is unlimited by default.
+     * @param perTick The maximum number of inputs processed per tick
+     */
+    public void setInputBudget(int perTick) {
+        Preconditions.checkArgument(perTick > 0, "At least one input must be processed per tick");
+        this.inputBudget = perTick;
+    }
+
+    /**
+     * Register a codec used to persist parsed argument values of its type
+     * @param codec The ValueCodec
+     */
+    public void registerCodec(ValueCodec<?> codec) {
+        codecs.register(codec);
+    }
+
+    /**
+     * Journal the progress of Conversations whose ConversationSpec has an id, so that they can be resumed after a
+     * restart or crash. Conversations recovered from an existing journal are resumed when their CommandSource next
+     * joins the server.
+     * @param file The journal file
+     * @param compactionThreshold The size in bytes past which the journal is compacted
+     * @throws IOException If the journal cannot be read or created
+     */
+    public void enableJournal(Path file, long compactionThreshold) throws IOException {
+        Preconditions.checkState(journal == null, "The journal has already been enabled");
+        journal = ConversationJournal.open(file, compactionThreshold);
+        recovered.putAll(journal.getRecovered());
+    }
+
+    public void enableJournal(Path file) throws IOException {
+        enableJournal(file, 8L << 20);
+    }
+
+    /**
+     * Wraps the channel so that members of message-suppressing Conversations do not receive its messages.
+     * The channel is returned as-is if no Conversation currently suppresses messages.
+     */
+    MessageChannel filterChannel(MessageChannel channel) {
+        if (suppressed.isEmpty() || channel instanceof SuppressingChannel) {
+            return channel;
+        }
+        return new SuppressingChannel(channel, suppressed);
+    }
+
+    ReferenceQueue<CommandSource> getReferenceQueue() {
+        return collected;
+    }
+
+    long now() {
+        return ticker.read();
     }
 
-    void process(Converse plugin, Conversation conversation, String input) {
-        Task.builder().execute(() -> conversation.processSafely(input)).submit(plugin);
+    /**
+     * Replace the clock used to expire and passivate Conversations, so that time can be simulated
+     */
+    void setTicker(Ticker ticker) {
+        Preconditions.checkNotNull(ticker);
+        this.ticker = ticker;
+    }
+
+    boolean isActive(Conversation conversation) {
+        return conversations.get(conversation.getIdentifier()) == conversation;
+    }
+
+    void start(Object plugin) {
+        this.plugin = plugin;
+        Task.builder().intervalTicks(1L).execute(this::drainMailboxes).submit(plugin);
+        scheduleExpiry();
+        exporters.forEach(Runnable::run);
+    }
+
+    void stop() {
+        stopping = true;
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Register the spec under its id, replacing any spec previously built with the same id (for example, when specs
+     * are reloaded). Conversations already started from the replaced spec carry on with it.
+     */
+    void registerSpec(ConversationSpec spec) {
+        specs.put(spec.getId(), spec);
+    }
+
+    /**
+     * Resume the Conversation that the CommandSource was part of when the server last stopped, if one was journaled
+     */
+    void resume(CommandSource source) {
+        ConversationJournal.Recovered state = recovered.remove(source.getIdentifier());
+        if (state != null && state.isStale(System.currentTimeMillis())) {
+            // a live Conversation has journaled its own START since
+            if (!conversations.containsKey(source.getIdentifier())) {
+                journal.append(ConversationJournal.END, source.getIdentifier(), "", null);
+            }
+            state = null;
+        }
+        if (state == null) {
+            load(source);
+            return;
+        }
+
+        ConversationSpec spec = specs.get(state.specId);
+        if (spec == null || conversations.containsKey(source.getIdentifier())) {
+            journal.append(ConversationJournal.END, source.getIdentifier(), "", null);
+            return;
+        }
+
+        Conversation conversation = new Conversation(source, spec);
+        try {
+            for (ConversationJournal.Record record : state.contexts) {
+                int nodeState = spec.getState(ConversationRoute.goTo(record.value));
+                if (nodeState >= 0) {
+                    ConversationNode node = spec.getNode(nodeState);
+                    conversation.restoreContext(node, codecs.decode(record.payload, node.getSchema()));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            journal.append(ConversationJournal.END, source.getIdentifier(), "", null);
+            return;
+        }
+
+        int next = state.route != null ? spec.getState(ConversationRoute.goTo(state.route)) : ConversationSpec.NONE;
+        addConversation(conversation);
+        conversation.nextState(next >= 0 ? next : spec.getFirst());
+    }
+
+    /**
+     * End the CommandSource's Conversation as it leaves the server, rather than waiting for it to expire. The
+     * Conversation is handed off to the ConversationStore if there is one, and otherwise exits. CommandSources
+     * disconnected by the server stopping are left alone, so that their journaled Conversations resume on restart.
+     */
+    void disconnect(CommandSource source) {
+        handoffs.remove(source.getIdentifier());
+        if (stopping) {
+            return;
+        }
+        Conversation conversation = conversations.get(source.getIdentifier());
+        if (conversation != null && !handoff(conversation) && conversations.remove(source.getIdentifier(), conversation)) {
+            removed(conversation);
+            conversation.getSpec().onExit(conversation);
+        }
+    }
+
+    /**
+     * Save the Conversation to the ConversationStore, if there is one, so that it can be resumed on another server.
+     * The Conversation is removed without exiting.
+     * @return true if the Conversation was handed off
+     */
+    private boolean handoff(Conversation conversation) {
+        ConversationStore store = this.store;
+        String specId = conversation.getSpec().getId();
+        ConversationNode node = conversation.getCurrentNode();
+        if (store == null || specId == null || node == null) {
+            return false;
+        }
+
+        byte[] data;
+        try {
+            byte[] contexts = conversation.encodeContext(codecs);
+            if (contexts == null) {
+                return false;
+            }
+            data = ConversationHandoff.write(specId, node.getRoute(), contexts);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        String identifier = conversation.getIdentifier();
+        if (!conversations.remove(identifier, conversation)) {
+            return false;
+        }
+        removed(conversation);
+        getAsyncExecutor().execute(() -> {
+            try {
+                store.save(identifier, data);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Start checking the ConversationStore for the CommandSource's Conversation. The previous server may still be
+     * saving it, so the store is checked again on each expiry check until the handoff window has passed.
+     */
+    private void load(CommandSource source) {
+        if (store == null) {
+            return;
+        }
+
+        HandoffPoll poll = new HandoffPoll(source, DeadlineQueue.deadline(now(), HANDOFF_WINDOW_NANOS));
+        handoffs.put(source.getIdentifier(), poll);
+        poll(poll);
+    }
+
+    private void pollHandoffs(long now) {
+        for (HandoffPoll poll : handoffs.values()) {
+            if (now - poll.giveUp >= 0) {
+                handoffs.remove(poll.source.getIdentifier(), poll);
+            } else {
+                poll(poll);
+            }
+        }
+    }
+
+    /**
+     * Take the CommandSource's Conversation from the ConversationStore off the main thread, then resume it on the
+     * main thread
+     */
+    private void poll(HandoffPoll poll) {
+        ConversationStore store = this.store;
+        if (store == null || !poll.polling.compareAndSet(false, true)) {
+            return;
+        }
+
+        String identifier = poll.source.getIdentifier();
+        getAsyncExecutor().execute(() -> {
+            try {
+                Optional<byte[]> data = store.take(identifier);
+                if (data.isPresent()) {
+                    tasks.offer(() -> {
+                        if (handoffs.remove(identifier, poll)) {
+                            importConversation(poll.source, data.get());
+                        }
+                    });
+                }
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                poll.polling.set(false);
+            }
+        });
+    }
+
+    private void importConversation(CommandSource source, byte[] data) {
+        ConversationHandoff handoff;
+        try {
+            handoff = ConversationHandoff.read(data);
+        } catch (IOException e) {
+            new IOException("Unable to read the Conversation handed off to " + source.getIdentifier(), e).printStackTrace();
+            return;
+        }
+
+        ConversationSpec spec = specs.get(handoff.specId);
+        if (spec == null || conversations.containsKey(source.getIdentifier())) {
+            return;
+        }
+
+        long elapsed = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - handoff.savedAt);
+        if (spec.getExpireNanos() > 0 && elapsed > spec.getExpireNanos()) {
+            return;
+        }
+
+        int state = spec.getState(ConversationRoute.goTo(handoff.route));
+        if (state < 0) {
+            return;
+        }
+
+        Conversation conversation = new Conversation(source, spec);
+        conversation.restorePassivated(handoff.contexts);
+        addConversation(conversation);
+        try {
+            // journal the imported contexts so that the Conversation also survives a restart of this server
+            logStart(conversation);
+            conversation.getContext().forEachRoute((route, contexts) -> {
+                for (ConversationContext context : contexts) {
+                    logContext(conversation, ConversationRoute.goTo(route), context);
+                }
+            });
+            conversation.nextState(state);
+        } catch (RuntimeException e) {
+            failed(conversation, e);
+        }
+    }
+
+    void logStart(Conversation conversation) {
+        String id = conversation.getSpec().getId();
+        if (journal != null && id != null) {
+            long timeout = TimeUnit.NANOSECONDS.toMillis(conversation.getSpec().getExpireNanos());
+            journal.appendStart(conversation.getIdentifier(), id, timeout);
+        }
+    }
+
+    /**
+     * Journal the context parsed at the route. A context holding values without a registered ValueCodec cannot be
+     * restored in full, so the Conversation is journaled as ended instead, and is not resumed after a restart.
+     */
+    void logContext(Conversation conversation, ConversationRoute route, ConversationContext context) {
+        if (journal != null && conversation.getSpec().getId() != null) {
+            if (!codecs.supports(context)) {
+                journal.append(ConversationJournal.END, conversation.getIdentifier(), "", null);
+                return;
+            }
+            try {
+                journal.append(ConversationJournal.CONTEXT, conversation.getIdentifier(), route.toString(), codecs.encode(context));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    void logRoute(Conversation conversation, ConversationRoute route) {
+        if (journal != null && conversation.getSpec().getId() != null) {
+            journal.append(ConversationJournal.ROUTE, conversation.getIdentifier(), route.toString(), null);
+        }
+    }
+
+    ValueCodecs getCodecs() {
+        return codecs;
+    }
+
+    synchronized Executor getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("converse-async-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return asyncExecutor;
+    }
+
+    void await(Conversation conversation) {
+        timeouts.schedule(conversation);
+    }
+
+    /**
+     * Called from any thread once the future a pending Conversation is waiting on has completed
+     */
+    void completed(Conversation conversation) {
+        completed.offer(conversation);
+    }
+
+    void startBatch(StartBatch batch) {
+        batches.add(batch);
+    }
+
+    void activated(Conversation conversation) {
+        if (passivationNanos > 0) {
+            idle.schedule(conversation);
+        }
+    }
+
+    void tickConversations() {
+        reclaimCollected();
+        expireRecovered();
+        long now = now();
+        if (!handoffs.isEmpty()) {
+            pollHandoffs(now);
+        }
+        for (Conversation conversation : expiry.poll(now)) {
+            if (conversations.remove(conversation.getIdentifier(), conversation)) {
+                removed(conversation);
+                try {
+                    conversation.getSpec().onExpire(conversation);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        if (passivationNanos > 0) {
+            for (Conversation conversation : idle.poll(now)) {
+                if (isActive(conversation) && !conversation.passivate(codecs)) {
+                    idle.schedule(conversation, DeadlineQueue.deadline(now, passivationNanos));
+                }
+            }
+        }
+    }
+
+    void process(Conversation conversation, String input) {
+        if (conversation.post(input)) {
+            pending.offer(conversation);
+        }
+    }
+
+    void drainMailboxes() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+
+        for (Conversation conversation : timeouts.poll(now())) {
+            conversation.timeout();
+        }
+
+        Conversation conversation;
+        while ((conversation = completed.poll()) != null) {
+            if (isActive(conversation)) {
+                try {
+                    conversation.resume();
+                } catch (RuntimeException e) {
+                    failed(conversation, e);
+                }
+            }
+        }
+        while ((conversation = pending.poll()) != null) {
+            deferred.offer(conversation);
+        }
+        // with a budget, each Conversation processes one input per turn and queues again behind the others
+        int budget = inputBudget;
+        int share = budget == Integer.MAX_VALUE ? budget : 1;
+        while (budget > 0 && (conversation = deferred.poll()) != null) {
+            int processed = conversation.drain(share);
+            budget -= processed;
+            if (processed > 0 && conversation.hasProcessableInput() && conversation.reschedule()) {
+                deferred.offer(conversation);
+            }
+        }
+        sendBatches();
+    }
+
+    /**
+     * Send the first prompts of batched starts, oldest batch first. No more first prompts are sent per tick than the
+     * largest per-tick limit of the waiting batches, however many batches there are.
+     */
+    private void sendBatches() {
+        if (batches.isEmpty()) {
+            return;
+        }
+
+        int budget = 0;
+        for (StartBatch batch : batches) {
+            budget = Math.max(budget, batch.getPerTick());
+        }
+        StartBatch batch;
+        while (budget > 0 && (batch = batches.peek()) != null) {
+            budget -= batch.send(this, budget);
+            if (batch.isDone()) {
+                batches.poll();
+            }
+        }
+    }
+
+    /**
+     * End the recovered Conversations whose CommandSource has not returned within the spec's timeout
+     */
+    private void expireRecovered() {
+        if (recovered.isEmpty()) {
+            return;
+        }
+
+        long time = System.currentTimeMillis();
+        Iterator<Map.Entry<String, ConversationJournal.Recovered>> iterator = recovered.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, ConversationJournal.Recovered> entry = iterator.next();
+            if (entry.getValue().isStale(time)) {
+                iterator.remove();
+                journal.append(ConversationJournal.END, entry.getKey(), "", null);
+            }
+        }
+    }
+
+    /**
+     * Exit a Conversation after an unexpected exception while processing it, so that one failing Conversation does
+     * not hold up the others
+     */
+    void failed(Conversation conversation, RuntimeException e) {
+        e.printStackTrace();
+        if (conversations.remove(conversation.getIdentifier(), conversation)) {
+            removed(conversation);
+            try {
+                conversation.getSpec().onExit(conversation);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Exit the Conversations whose CommandSource has been garbage collected since the last check
+     */
+    private void reclaimCollected() {
+        Reference<? extends CommandSource> reference;
+        while ((reference = collected.poll()) != null) {
+            Conversation conversation = ((Conversation.SourceReference) reference).getConversation();
+            if (conversations.remove(conversation.getIdentifier(), conversation)) {
+                removed(conversation);
+                conversation.getSpec().onExit(conversation);
+            }
+        }
+    }
+
+    /**
+     * Remove the Conversation that a new Conversation has replaced for the same CommandSource
+     */
+    private void replaced(@Nullable Conversation previous, Conversation conversation) {
+        if (previous != null && previous != conversation) {
+            removed(previous);
+        }
+    }
+
+    private void removed(Conversation conversation) {
+        expiry.remove(conversation);
+        idle.remove(conversation);
+        timeouts.remove(conversation);
+        conversation.getSpec().getMetrics().active.decrement();
+        if (conversation.suppressMessages()) {
+            suppressed.remove(conversation.getIdentifier());
+        }
+        if (journal != null && conversation.getSpec().getId() != null) {
+            journal.append(ConversationJournal.END, conversation.getIdentifier(), "", null);
+        }
+    }
+
+    private void scheduleExpiry() {
+        if (expiryTask != null) {
+            expiryTask.cancel();
+        }
+        expiryTask = Task.builder()
+                .intervalTicks(expiryPrecision)
+                .execute(this::tickConversations)
+                .submit(plugin);
+    }
+
+    private static final class HandoffPoll {
+
+        private final CommandSource source;
+        private final long giveUp;
+        private final AtomicBoolean polling = new AtomicBoolean(false);
+
+        private HandoffPoll(CommandSource source, long giveUp) {
+            this.source = source;
+            this.giveUp = giveUp;
+        }
     }
 }
@@ -0,0 +1,38 @@
+package me.dags.converse;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.MapMaker;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Tracks the ConversationSpecs that have had Conversations started, and produces snapshots of their metrics:
+ *  - active, started, completed, exited and expired Conversations per ConversationSpec
+ *  - inputs rejected for exceeding a ConversationSpec's input limits
+ *  - parse, route and prompt latency histograms per ConversationNode
+ *  - parse failures (ArgumentParseExceptions) per ConversationNode
+ *
+ * Counters are striped (LongAdder) so that recording them does not contend between threads.
+ *
+ * ConversationSpecs are tracked weakly, so a spec that has been discarded (for example, replaced on reload) drops out
+ * of the metrics once it has no Conversations left.
+ */
+public final class ConversationMetrics {
+
+    private final Set<ConversationSpec> specs = Collections.newSetFromMap(new MapMaker().weakKeys().<ConversationSpec, Boolean>makeMap());
+
+    ConversationMetrics(){}
+
+    public MetricsSnapshot snapshot() {
+        ImmutableList.Builder<MetricsSnapshot.SpecSnapshot> snapshots = ImmutableList.builder();
+        for (ConversationSpec spec : specs) {
+            snapshots.add(spec.getMetrics().snapshot(spec));
+        }
+        return new MetricsSnapshot(snapshots.build());
+    }
+
+    void track(ConversationSpec spec) {
+        specs.add(spec);
+    }
+}
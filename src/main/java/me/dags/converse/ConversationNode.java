@@ -1,6 +1,9 @@
 package me.dags.converse;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.command.args.*;
@@ -9,65 +12,197 @@ import org.spongepowered.api.command.args.parsing.SingleArg;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.TextTemplate;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a single node in a conversation.
  * The node prompts the CommandSource and waits for input.
  * It then parses the input and routes the Conversation onto the next node.
  * The node is also used to determine tab-completions for active Conversations.
+ *
+ * Nodes whose only parameter is a static set of choices answer tab-completions from a sorted prefix index.
+ * Completions may additionally be cached per tokenized input when the builder enables a completion cache.
+ *
+ * A node may instead route via an AsyncConversationRouter, in which case the Conversation waits, without blocking
+ * the main thread, for the route to be decided. Likewise a node's prompt may be an AsyncConversationPrompt, and a
+ * node may prefetch the async prompts of the nodes it routes to while the CommandSource is typing.
+ *
+ * Parsing happens in two stages: the input is tokenized and parsed into a new ConversationContext, which is then
+ * committed to the ContextCollection. Nodes built with parseAsync run the first stage on a worker thread, up to the
+ * first parameter marked as needing the main thread. That parameter and any after it are parsed on the main thread.
+ * Nodes built with experimentalFastPaths, whose single integer, double, boolean, choices, string or joined-strings
+ * parameter was added through the Builder's typed methods, first try a FastPath that parses the raw input directly,
+ * falling back to the tokenizer and CommandElement for input it does not handle.
  */
 public final class ConversationNode {
 
     private final ConversationRouter router;
+    private final AsyncConversationRouter asyncRouter;
+    private final long routerTimeoutNanos;
+    private final long parseTimeoutNanos;
     private final ConversationPrompt prompt;
+    private final AsyncConversationPrompt asyncPrompt;
+    private final long promptTimeoutNanos;
+    private final List<ConversationRoute> prefetch;
     private final List<CommandElement> parameters;
+    private final int[] slots;
+    private final ContextSchema schema;
     private final CommandElement sequence;
     private final InputTokenizer tokenizer;
     private final ConversationRoute route;
-    private final TextTemplate inputTemplate;
+    private final ConversationRoute target;
+    private final InputTemplate inputTemplate;
+    private final RetentionPolicy retention;
+    private final PrefixIndex choiceIndex;
+    private final Cache<CompletionKey, List<String>> completions;
+    private final NodeMetrics metrics = new NodeMetrics();
+    private final int mainThreadIndex;
+    private final FastPath fastPath;
+    private final boolean parseAsync;
 
     private ConversationNode(Builder builder) {
         this.router = builder.router;
+        this.asyncRouter = builder.asyncRouter;
+        this.routerTimeoutNanos = builder.routerTimeoutNanos;
+        this.parseTimeoutNanos = builder.parseTimeoutNanos;
         this.prompt = builder.prompt;
+        this.asyncPrompt = builder.asyncPrompt;
+        this.promptTimeoutNanos = builder.promptTimeoutNanos;
+        this.prefetch = builder.prefetch;
         this.tokenizer = builder.tokenizer;
         this.parameters = ImmutableList.copyOf(builder.parameters);
+        this.schema = builder.schema();
+        this.slots = new int[parameters.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = schema.indexOf(schema.argKey(parameters.get(i).getKey()));
+        }
         this.sequence = GenericArguments.seq(builder.parameters.toArray(new CommandElement[builder.parameters.size()]));
         this.route = builder.route;
-        this.inputTemplate = builder.inputTemplate;
+        this.target = builder.target;
+        this.inputTemplate = builder.inputTemplate != null ? new InputTemplate(builder.inputTemplate, schema) : null;
+        this.retention = builder.retention;
+        this.choiceIndex = parameters.size() == 1 ? builder.indexes.get(parameters.get(0)) : null;
+        this.parseAsync = builder.parseAsync;
+        this.fastPath = builder.fastPathsEnabled && parameters.size() == 1 && slots[0] >= 0 && !builder.customTokenizer
+                ? builder.fastPaths.get(parameters.get(0))
+                : null;
+        int mainThreadIndex = parameters.size();
+        for (int i = 0; i < parameters.size(); i++) {
+            if (builder.mainThread.contains(parameters.get(i))) {
+                mainThreadIndex = i;
+                break;
+            }
+        }
+        this.mainThreadIndex = parseAsync ? mainThreadIndex : 0;
+        this.completions = builder.completionCacheSize > 0
+                ? CacheBuilder.newBuilder().maximumSize(builder.completionCacheSize).recordStats().build()
+                : null;
     }
 
     public List<String> complete(CommandSource source, String input) throws ArgumentParseException {
+        if (choiceIndex != null && input.indexOf(' ') < 0) {
+            return choiceIndex.complete(input);
+        }
+
         List<SingleArg> args = tokenizer.tokenize(input, false);
-        CommandArgs commandArgs = new CommandArgs(input, args);
-        CommandContext commandContext = new CommandContext();
-        return sequence.complete(source, commandArgs, commandContext);
+        if (completions == null) {
+            return completeInput(source, input, args);
+        }
+
+        // inputs that tokenize the same way share an entry
+        CompletionKey key = new CompletionKey(args, !input.isEmpty() && Character.isWhitespace(input.charAt(input.length() - 1)));
+        List<String> cached = completions.getIfPresent(key);
+        if (cached == null) {
+            cached = completeInput(source, input, args);
+            completions.put(key, cached);
+        }
+        return cached;
     }
 
     public void process(Conversation conversation) throws ConversationException {
         Optional<CommandSource> source = conversation.getSource();
         if (source.isPresent()) {
+            if (asyncRouter != null) {
+                ConversationManager manager = Converse.getConversationManager();
+                Executor executor = manager.getAsyncExecutor();
+                CompletableFuture<ConversationRoute> route;
+                try {
+                    route = asyncRouter.process(source.get(), conversation.getContext(), executor);
+                    Preconditions.checkNotNull(route, "AsyncConversationRouter returned null");
+                } catch (RuntimeException e) {
+                    route = Conversation.failedFuture(e);
+                }
+                conversation.awaitRoute(route, routerTimeoutNanos);
+                return;
+            }
+
+            long start = System.nanoTime();
             ConversationRoute route = router.process(source.get(), conversation.getContext());
+            metrics.route.record(System.nanoTime() - start);
             conversation.nextRoute(route);
         }
     }
 
     public void parse(CommandSource source, String input, ContextCollection context) throws ArgumentParseException {
+        ParsedInput parsed = parseOffThread(source, input);
+        parseOnMainThread(source, parsed);
+        commit(parsed, context);
+    }
+
+    /**
+     * Tokenize the input and parse the parameters that do not need the main thread
+     */
+    ParsedInput parseOffThread(CommandSource source, String input) throws ArgumentParseException {
+        if (fastPath != null) {
+            ConversationContext context = new ConversationContext(schema);
+            if (fastPath.parse(input, context, slots[0])) {
+                return new ParsedInput(null, context, parameters.size());
+            }
+        }
+
         List<SingleArg> args = tokenizer.tokenize(input, false);
-        CommandArgs commandArgs = new CommandArgs(input, args);
-        CommandContext commandContext = new CommandContext();
-        ConversationContext currentContext = new ConversationContext();
+        ParsedInput parsed = new ParsedInput(new CommandArgs(input, args), new ConversationContext(schema), 0);
+        parseParameters(source, parsed, mainThreadIndex);
+        return parsed;
+    }
 
-        context.putContext(getRoute(), currentContext);
-        context.setCurrent(currentContext);
+    /**
+     * Parse the remaining parameters, from the first that needs the main thread onwards
+     */
+    void parseOnMainThread(CommandSource source, ParsedInput parsed) throws ArgumentParseException {
+        parseParameters(source, parsed, parameters.size());
+    }
 
-        for (CommandElement element : parameters) {
-            element.parse(source, commandArgs, commandContext);
-            currentContext.putAll(element.getKey(), commandContext.getAll(element.getKey()));
-        }
+    /**
+     * Make the parsed ConversationContext the current context of the collection
+     */
+    void commit(ParsedInput parsed, ContextCollection context) {
+        context.putContext(getRoute(), parsed.context, retention);
+        context.setCurrent(getRoute(), parsed.context);
+    }
+
+    /**
+     * Get the slot handle for one of this node's parameters
+     * @param key The parameter key
+     * @return The ContextSlot if this node declares a parameter with the given key
+     */
+    public Optional<ContextSlot> getSlot(String key) {
+        return Optional.ofNullable(schema.getSlot(key));
+    }
+
+    public Optional<ContextSlot> getSlot(Text key) {
+        return getSlot(schema.argKey(key));
+    }
+
+    /**
+     * @return The hit/miss statistics of this node's completion cache (all zero if the cache is not enabled)
+     */
+    public CacheStats getCompletionStats() {
+        return completions != null ? completions.stats() : new CacheStats(0, 0, 0, 0, 0, 0);
     }
 
     public ConversationRoute getRoute() {
@@ -78,27 +213,174 @@ public final class ConversationNode {
         return prompt;
     }
 
+    public Optional<AsyncConversationPrompt> getAsyncPrompt() {
+        return Optional.ofNullable(asyncPrompt);
+    }
+
     public Optional<TextTemplate> getInputTemplate() {
-        return Optional.ofNullable(inputTemplate);
+        return inputTemplate != null ? Optional.of(inputTemplate.getTemplate()) : Optional.empty();
+    }
+
+    long getParseTimeoutNanos() {
+        return parseTimeoutNanos;
+    }
+
+    long getPromptTimeoutNanos() {
+        return promptTimeoutNanos;
+    }
+
+    /**
+     * @return The routes whose async prompts are prefetched while this node waits for input
+     */
+    List<ConversationRoute> getPrefetchRoutes() {
+        return prefetch;
+    }
+
+    NodeMetrics getMetrics() {
+        return metrics;
+    }
+
+    ContextSchema getSchema() {
+        return schema;
+    }
+
+    @Nullable
+    RetentionPolicy getRetention() {
+        return retention;
+    }
+
+    boolean parsesAsync() {
+        return parseAsync;
+    }
+
+    boolean hasInputTemplate() {
+        return inputTemplate != null;
+    }
+
+    /**
+     * Render the input template against the parsed context without building an intermediate argument map
+     */
+    Text formatInput(ConversationContext context, String input) {
+        return inputTemplate.apply(context, input);
+    }
+
+    /**
+     * @return The ConversationRoute this node always routes to, if its router is static
+     */
+    Optional<ConversationRoute> getTarget() {
+        return Optional.ofNullable(target);
+    }
+
+    private void parseParameters(CommandSource source, ParsedInput parsed, int until) throws ArgumentParseException {
+        for (; parsed.next < until; parsed.next++) {
+            int i = parsed.next;
+            CommandElement element = parameters.get(i);
+            element.parse(source, parsed.args, parsed.commandContext);
+            if (slots[i] >= 0) {
+                parsed.context.putAll(slots[i], parsed.commandContext.getAll(element.getKey()));
+            }
+        }
+    }
+
+    private List<String> completeInput(CommandSource source, String input, List<SingleArg> args) throws ArgumentParseException {
+        CommandArgs commandArgs = new CommandArgs(input, args);
+        CommandContext commandContext = new CommandContext();
+        return ImmutableList.copyOf(sequence.complete(source, commandArgs, commandContext));
+    }
+
+    /**
+     * The tokens of an input being completed, and whether a new token has been started after them
+     */
+    private static final class CompletionKey {
+
+        private final List<String> tokens;
+        private final boolean trailingSpace;
+        private final int hash;
+
+        private CompletionKey(List<SingleArg> args, boolean trailingSpace) {
+            List<String> tokens = new ArrayList<>(args.size());
+            for (SingleArg arg : args) {
+                tokens.add(arg.getValue());
+            }
+            this.tokens = tokens;
+            this.trailingSpace = trailingSpace;
+            this.hash = 31 * tokens.hashCode() + (trailingSpace ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof CompletionKey)) {
+                return false;
+            }
+            CompletionKey key = (CompletionKey) other;
+            return hash == key.hash && trailingSpace == key.trailingSpace && tokens.equals(key.tokens);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The progress of parsing an input, handed from the worker thread to the main thread
+     */
+    static final class ParsedInput {
+
+        private final CommandArgs args;
+        private final CommandContext commandContext;
+        private final ConversationContext context;
+        private int next;
+
+        private ParsedInput(@Nullable CommandArgs args, ConversationContext context, int next) {
+            this.args = args;
+            this.commandContext = args != null ? new CommandContext() : null;
+            this.context = context;
+            this.next = next;
+        }
+
+        ConversationContext getContext() {
+            return context;
+        }
     }
 
     public static Builder route(String route) {
-        return route(ConversationRoute.goTo(route));
+        return new Builder(ConversationRoute.declare(route));
     }
 
     public static Builder route(ConversationRoute route) {
-        return new Builder(route);
+        return new Builder(ConversationRoute.declare(route));
     }
 
     public static final class Builder {
 
+        private static final int MAX_PREFETCH = 8;
+
         private final ConversationRoute route;
 
         private InputTokenizer tokenizer = InputTokenizer.quotedStrings(false);
         private ConversationPrompt prompt = ConversationPrompt.EMPTY;
+        private AsyncConversationPrompt asyncPrompt = null;
+        private long promptTimeoutNanos = TimeUnit.SECONDS.toNanos(5L);
+        private boolean promptTimeoutSet = false;
+        private List<ConversationRoute> prefetch = ImmutableList.of();
+        private boolean prefetchTarget = false;
         private List<CommandElement> parameters = new ArrayList<>();
+        private Map<CommandElement, ContextSlot.Type> types = new IdentityHashMap<>();
+        private Map<CommandElement, PrefixIndex> indexes = new IdentityHashMap<>();
+        private Map<CommandElement, FastPath> fastPaths = new IdentityHashMap<>();
+        private boolean customTokenizer = false;
+        private boolean fastPathsEnabled = false;
+        private Set<CommandElement> mainThread = Collections.newSetFromMap(new IdentityHashMap<>());
+        private boolean parseAsync = false;
+        private int completionCacheSize = 0;
         private ConversationRouter router = null;
-        private TextTemplate inputTemplate = TextTemplate.of("> ", TextTemplate.arg("raw_input"));
+        private AsyncConversationRouter asyncRouter = null;
+        private long routerTimeoutNanos = TimeUnit.SECONDS.toNanos(5L);
+        private long parseTimeoutNanos = TimeUnit.SECONDS.toNanos(5L);
+        private ConversationRoute target = null;
+        private TextTemplate inputTemplate = TextTemplate.of("> ", TextTemplate.arg(InputTemplate.RAW_INPUT));
+        private RetentionPolicy retention = null;
 
         Builder(ConversationRoute route) {
             this.route = route;
@@ -110,7 +392,10 @@ public final class ConversationNode {
          * @return The current Builder
          */
         public Builder router(ConversationRoute route) {
-            this.router = (src, context) -> route;
+            ConversationRoute target = ConversationRoute.declare(route);
+            this.router = (src, context) -> target;
+            this.asyncRouter = null;
+            this.target = target;
             return this;
         }
 
@@ -122,6 +407,35 @@ public final class ConversationNode {
          */
         public Builder router(ConversationRouter router) {
             this.router = router;
+            this.asyncRouter = null;
+            this.target = null;
+            return this;
+        }
+
+        /**
+         * Route the conversation via an AsyncConversationRouter. Input received while the route is being decided
+         * is queued until the Conversation has moved on.
+         * @param router The Router that will evaluate the ConversationContexts and complete with the route to move
+         *               on to next
+         * @return The current Builder
+         */
+        public Builder router(AsyncConversationRouter router) {
+            this.asyncRouter = router;
+            this.router = null;
+            this.target = null;
+            return this;
+        }
+
+        /**
+         * Set how long an AsyncConversationRouter may take to decide the next route before the CommandSource is
+         * re-prompted for input. The default is 5 seconds.
+         * @param time The timeout
+         * @param unit The unit of the timeout
+         * @return The current Builder
+         */
+        public Builder routerTimeout(long time, TimeUnit unit) {
+            Preconditions.checkArgument(time > 0, "Timeout must be greater than zero");
+            this.routerTimeoutNanos = unit.toNanos(time);
             return this;
         }
 
@@ -131,7 +445,7 @@ public final class ConversationNode {
          * @return The current Builder
          */
         public Builder prompt(Text prompt) {
-            this.prompt = (src, context) -> prompt;
+            this.prompt = ConversationPrompt.of(prompt);
             return this;
         }
 
@@ -145,6 +459,52 @@ public final class ConversationNode {
             return this;
         }
 
+        /**
+         * Assign an AsyncConversationPrompt for the ConversationNode. Any Text or ConversationPrompt also assigned is
+         * sent in its place should the async prompt fail or time out.
+         * @param prompt The AsyncConversationPrompt used to prompt the CommandSource for input
+         * @return The current Builder
+         */
+        public Builder prompt(AsyncConversationPrompt prompt) {
+            this.asyncPrompt = prompt;
+            return this;
+        }
+
+        /**
+         * Set how long an AsyncConversationPrompt may take before the fallback prompt is sent instead. A fallback
+         * Text or ConversationPrompt must also be assigned. The default is 5 seconds, after which nothing is sent if
+         * there is no fallback.
+         * @param time The timeout
+         * @param unit The unit of the timeout
+         * @return The current Builder
+         */
+        public Builder promptTimeout(long time, TimeUnit unit) {
+            Preconditions.checkArgument(time > 0, "Timeout must be greater than zero");
+            this.promptTimeoutNanos = unit.toNanos(time);
+            this.promptTimeoutSet = true;
+            return this;
+        }
+
+        /**
+         * Start computing the async prompts of the given nodes as soon as this node has prompted for input, so that
+         * whichever is routed to next can be sent without waiting. The prompts are given a snapshot of the contexts
+         * taken before this node's input was parsed, so prefetched prompts must not depend on that input (for example,
+         * by echoing the answer to this node). Prefetched prompts that are not routed to are cancelled.
+         * If no routes are given, the route of a static router is prefetched.
+         * @param routes The routes this node's router may move on to, at most 8
+         * @return The current Builder
+         */
+        public Builder prefetchPrompts(ConversationRoute... routes) {
+            Preconditions.checkArgument(routes.length <= MAX_PREFETCH, "Cannot prefetch more than %s prompts", MAX_PREFETCH);
+            ImmutableList.Builder<ConversationRoute> prefetch = ImmutableList.builder();
+            for (ConversationRoute route : routes) {
+                prefetch.add(ConversationRoute.declare(route));
+            }
+            this.prefetch = prefetch.build();
+            this.prefetchTarget = routes.length == 0;
+            return this;
+        }
+
         /**
          * The parameter(s) that the CommandSource is expected to input
          * @param elements The parameters
@@ -155,6 +515,142 @@ public final class ConversationNode {
             return this;
         }
 
+        /**
+         * The parameter(s) that the CommandSource is expected to input, which must be parsed on the main thread
+         * because they read game state, such as player or world lookups
+         * @param elements The parameters
+         * @return The current Builder
+         */
+        public Builder mainThreadParameters(CommandElement... elements) {
+            Collections.addAll(parameters, elements);
+            Collections.addAll(mainThread, elements);
+            return this;
+        }
+
+        /**
+         * Experimental: parse the input of a node with a single typed parameter (added with intParameter,
+         * doubleParameter, booleanParameter, choices, stringParameter or joinedStringsParameter) directly from the
+         * raw input, skipping the tokenizer and CommandElement for simple, unquoted input. FastPaths are meant to
+         * produce the same values as the CommandElement, but that has not yet been verified against every Sponge
+         * implementation, so they are off by default.
+         * @return The current Builder
+         */
+        public Builder experimentalFastPaths() {
+            this.fastPathsEnabled = true;
+            return this;
+        }
+
+        /**
+         * Tokenize and parse input on a worker thread rather than the main thread. Parameters added with
+         * mainThreadParameters, and any parameters after the first of them, are still parsed on the main thread.
+         * Input received while parsing is queued until the parsed input has been processed.
+         * @return The current Builder
+         */
+        public Builder parseAsync() {
+            this.parseAsync = true;
+            return this;
+        }
+
+        /**
+         * Set how long parsing input on a worker thread may take before it is interrupted and the CommandSource is
+         * asked to try again. Only applies if the node parses asynchronously. The default is 5 seconds.
+         * @param time The timeout
+         * @param unit The unit of the timeout
+         * @return The current Builder
+         */
+        public Builder parseTimeout(long time, TimeUnit unit) {
+            Preconditions.checkArgument(time > 0, "Timeout must be greater than zero");
+            this.parseTimeoutNanos = unit.toNanos(time);
+            return this;
+        }
+
+        /**
+         * Add an integer parameter whose value is stored unboxed in the ConversationContext
+         * @param key The parameter key
+         * @return The current Builder
+         */
+        public Builder intParameter(Text key) {
+            return typed(GenericArguments.integer(key), ContextSlot.Type.INTEGER, FastPaths.integer());
+        }
+
+        /**
+         * Add a double parameter whose value is stored unboxed in the ConversationContext
+         * @param key The parameter key
+         * @return The current Builder
+         */
+        public Builder doubleParameter(Text key) {
+            return typed(GenericArguments.doubleNum(key), ContextSlot.Type.DOUBLE, FastPaths.doubleNum());
+        }
+
+        /**
+         * Add a boolean parameter whose value is stored unboxed in the ConversationContext
+         * @param key The parameter key
+         * @return The current Builder
+         */
+        public Builder booleanParameter(Text key) {
+            return typed(GenericArguments.bool(key), ContextSlot.Type.BOOLEAN, FastPaths.bool());
+        }
+
+        /**
+         * Add a parameter that accepts a single word
+         * @param key The parameter key
+         * @return The current Builder
+         */
+        public Builder stringParameter(Text key) {
+            return typed(GenericArguments.string(key), ContextSlot.Type.OBJECT, FastPaths.string());
+        }
+
+        /**
+         * Add a parameter that accepts the remaining words of the input, joined with single spaces
+         * @param key The parameter key
+         * @return The current Builder
+         */
+        public Builder joinedStringsParameter(Text key) {
+            return typed(GenericArguments.remainingJoinedStrings(key), ContextSlot.Type.OBJECT, FastPaths.joinedStrings());
+        }
+
+        /**
+         * Add a parameter that accepts one of a static set of choices. Tab-completions for a node with a single
+         * choices parameter are answered from a prefix index of the choices.
+         * @param key The parameter key
+         * @param choices The choices mapped to the values they produce
+         * @return The current Builder
+         */
+        public Builder choices(Text key, Map<String, ?> choices) {
+            CommandElement element = GenericArguments.choices(key, choices);
+            parameters.add(element);
+            indexes.put(element, new PrefixIndex(choices.keySet()));
+            fastPaths.put(element, FastPaths.choices(choices));
+            return this;
+        }
+
+        /**
+         * Add a parameter that accepts one of a static set of choices, each producing itself as the value
+         * @param key The parameter key
+         * @param choices The choices
+         * @return The current Builder
+         */
+        public Builder choices(Text key, String... choices) {
+            Map<String, String> map = new LinkedHashMap<>();
+            for (String choice : choices) {
+                map.put(choice, choice);
+            }
+            return choices(key, map);
+        }
+
+        /**
+         * Cache the tab-completions for recently seen inputs. Inputs are keyed by their tokens, so inputs differing
+         * only in repeated whitespace share an entry. Only enable this for nodes whose completions do not depend on
+         * the CommandSource or on changing game state.
+         * @param maximumSize The maximum number of inputs to cache completions for
+         * @return The current Builder
+         */
+        public Builder cacheCompletions(int maximumSize) {
+            Preconditions.checkArgument(maximumSize > 0, "Cache size must be greater than zero");
+            this.completionCacheSize = maximumSize;
+            return this;
+        }
+
         /**
          * Set the template for displaying user input. The template args may include 'raw_input' and/or the parameter
          * names specified for this node.
@@ -176,6 +672,18 @@ public final class ConversationNode {
             return this;
         }
 
+        /**
+         * Set how many of the ConversationContexts produced by repeated visits to this node are kept, overriding the
+         * ConversationSpec's policy
+         * @param policy The RetentionPolicy
+         * @return The current Builder
+         */
+        public Builder retention(RetentionPolicy policy) {
+            Preconditions.checkNotNull(policy);
+            this.retention = policy;
+            return this;
+        }
+
         /**
          * Provide an alternate InputTokenizer used to parse input strings
          * @param tokenizer The InputTokenizer
@@ -183,6 +691,7 @@ public final class ConversationNode {
          */
         public Builder inputTokenizer(InputTokenizer tokenizer) {
             this.tokenizer = tokenizer;
+            this.customTokenizer = true;
             return this;
         }
 
@@ -191,10 +700,34 @@ public final class ConversationNode {
          * @return The current Builder
          */
         public ConversationNode build() {
-            Preconditions.checkNotNull(router);
+            Preconditions.checkState(router != null || asyncRouter != null, "No router has been set");
             Preconditions.checkNotNull(prompt);
             Preconditions.checkNotNull(parameters);
+            Preconditions.checkState(!promptTimeoutSet || prompt != ConversationPrompt.EMPTY, "A fallback prompt is required when a prompt timeout is set");
+            if (prefetchTarget) {
+                Preconditions.checkState(target != null, "Only a static router has a route to prefetch");
+                prefetch = ImmutableList.of(target);
+            }
             return new ConversationNode(this);
         }
+
+        private Builder typed(CommandElement element, ContextSlot.Type type, FastPath fastPath) {
+            parameters.add(element);
+            types.put(element, type);
+            fastPaths.put(element, fastPath);
+            return this;
+        }
+
+        private ContextSchema schema() {
+            ContextSchema.Builder schema = new ContextSchema.Builder();
+            for (CommandElement element : parameters) {
+                Text text = element.getKey();
+                String key = ConversationContext.textToArgKey(text);
+                if (key != null) {
+                    schema.add(text, key, types.getOrDefault(element, ContextSlot.Type.OBJECT));
+                }
+            }
+            return schema.build();
+        }
     }
 }
@@ -3,13 +3,16 @@ package me.dags.converse;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.text.Text;
 
+import java.util.Locale;
+import java.util.function.Function;
+
 /**
  * Provides a Text object that is used to prompt a CommandSource for input.
  */
 @FunctionalInterface
 public interface ConversationPrompt {
 
-    ConversationPrompt EMPTY = (src, context) -> Text.EMPTY;
+    ConversationPrompt EMPTY = of(Text.EMPTY);
 
     /**
      * @param src The CommandSource involved in the conversation.
@@ -17,4 +20,31 @@ public interface ConversationPrompt {
      * @return The Text that will be sent to the CommandSource to prompt them for input.
      */
     Text apply(CommandSource src, ContextCollection contexts);
+
+    /**
+     * @param text The Text to prompt with.
+     * @return A ConversationPrompt that always provides the same Text, independent of the CommandSource and contexts.
+     */
+    static ConversationPrompt of(Text text) {
+        return new StaticPrompt(text);
+    }
+
+    /**
+     * @param function The function producing the Text to prompt with from the contexts of the conversation.
+     * @return A ConversationPrompt that does not depend on the CommandSource, and so is rendered once for all of the
+     * Conversations started by ConversationSpec.startConversations.
+     */
+    static ConversationPrompt shared(Function<ContextCollection, Text> function) {
+        return new SharedPrompt(function);
+    }
+
+    /**
+     * @param function The function rendering the Text to prompt with in a given locale, for example by resolving a
+     *                 Translation.
+     * @return A ConversationPrompt that depends only on the CommandSource's locale, and so is rendered once per locale
+     * and cached rather than on every visit to the node.
+     */
+    static ConversationPrompt localized(Function<Locale, Text> function) {
+        return new LocalizedPrompt(function);
+    }
 }
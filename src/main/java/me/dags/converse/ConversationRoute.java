@@ -1,6 +1,9 @@
 package me.dags.converse;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
 
 /**
  * Used as the key/identifier for ConversationNodes.
@@ -16,11 +19,17 @@ import com.google.common.base.Preconditions;
  *
  * ConversationRoute.exit() represents any other situation where the conversation should end immediately. No further
  * ConversationNodes are called and the parent ConversationSpec's 'onExit' callback is called.
+ *
+ * The routes declared by ConversationNodes are resolved once, when the node is built, into a registry of canonical
+ * instances, and compare by reference. ConversationRoute.goTo(key) returns the declared route for a known key without
+ * allocating, so routers may resolve keys on every call, or hold on to the route. Unknown keys produce a fresh route
+ * that is not registered, so routers may safely call goTo with arbitrary input. Keys are case-insensitive.
  */
 public final class ConversationRoute {
 
     private static final ConversationRoute END = new ConversationRoute("END");
     private static final ConversationRoute EXIT = new ConversationRoute("EXIT");
+    private static final Map<String, ConversationRoute> DECLARED = Maps.newConcurrentMap();
 
     private final String key;
     private final int hash;
@@ -40,7 +49,7 @@ public final class ConversationRoute {
 
     @Override
     public boolean equals(Object other) {
-        return other != null && other.getClass() == this.getClass() && other.toString().equals(this.toString());
+        return this == other;
     }
 
     @Override
@@ -56,7 +65,30 @@ public final class ConversationRoute {
     public static ConversationRoute goTo(String key) {
         Preconditions.checkNotNull(key);
         Preconditions.checkState(!key.isEmpty());
-        return new ConversationRoute(key.toLowerCase());
+        ConversationRoute route = DECLARED.get(key);
+        if (route != null) {
+            return route;
+        }
+        String lower = key.toLowerCase();
+        route = DECLARED.get(lower);
+        return route != null ? route : new ConversationRoute(lower);
+    }
+
+    /**
+     * Resolve the canonical route for a key declared by a ConversationNode or spec, registering it if it is new
+     */
+    static ConversationRoute declare(String key) {
+        Preconditions.checkNotNull(key);
+        Preconditions.checkState(!key.isEmpty());
+        return DECLARED.computeIfAbsent(key.toLowerCase(), ConversationRoute::new);
+    }
+
+    /**
+     * Resolve the canonical route for a route declared by a ConversationNode. The terminal routes are returned as is.
+     */
+    static ConversationRoute declare(ConversationRoute route) {
+        Preconditions.checkNotNull(route);
+        return route == END || route == EXIT ? route : declare(route.key);
     }
 
     public static ConversationRoute end() {
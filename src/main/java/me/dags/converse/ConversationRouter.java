@@ -9,6 +9,9 @@ import org.spongepowered.api.command.CommandSource;
  * parsed. The most recently parsed information can be retrieved from the provided ContextCollection via
  * ContextCollection.getCurrent().
  * ConversationContexts from previous nodes can also be queried.
+ *
+ * Messages for the CommandSource should be sent through Conversation.send (the Conversation is available from
+ * ConversationManager.getConversation), so that they are joined in order with the Conversation's own messages.
  */
 @FunctionalInterface
 public interface ConversationRouter {
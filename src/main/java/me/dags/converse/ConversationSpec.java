@@ -12,6 +12,7 @@ import org.spongepowered.api.command.spec.CommandExecutor;
 import org.spongepowered.api.command.spec.CommandSpec;
 import org.spongepowered.api.text.Text;
 
+import javax.annotation.Nullable;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -19,29 +20,73 @@ import java.util.function.Consumer;
 /**
  * The ConversationSpec is used to generate new Conversation instances.
  * ConversationSpec implements CommandExecutor so that it can easily be integrated with Sponge's command API.
+ *
+ * On construction the node graph is compiled into a state machine: each ConversationNode is assigned a dense
+ * integer state id and statically routed nodes have their target state resolved up front. A static route to a
+ * node that is not registered with the spec fails the build rather than the Conversation.
  */
 public final class ConversationSpec implements CommandExecutor {
 
-    private final Map<ConversationRoute, ConversationNode> nodes;
+    static final int NONE = -1;
+    static final int END = -2;
+    static final int EXIT = -3;
+    static final int DYNAMIC = -4;
+
+    private final ConversationNode[] states;
+    private final Map<ConversationRoute, Integer> stateIds;
+    private final Map<String, Integer> stateKeys;
+    private final int[] transitions;
+    private final int[][] prefetch;
     private final Set<String> exitKeywords;
-    private final ConversationRoute first;
+    private final String id;
+    private final int first;
     private final Consumer<Conversation> onExit;
     private final Consumer<Conversation> onExpire;
     private final Consumer<Conversation> onComplete;
-    private final TimeUnit timeUnit;
-    private final long expireTime;
+    private final long expireNanos;
+    private final RetentionPolicy retention;
+    private final SpecMetrics metrics = new SpecMetrics();
     private final boolean suppressMessages;
+    private final int maxInputLength;
+    private final int maxQueuedInputs;
+    private final double inputRate;
+    private final int inputBurst;
+    private final boolean coalesceInputs;
+    private final InputPolicy inputPolicy;
 
     private ConversationSpec(Builder builder) {
-        nodes = ImmutableMap.copyOf(builder.children);
+        ImmutableMap.Builder<ConversationRoute, Integer> ids = ImmutableMap.builder();
+        ImmutableMap.Builder<String, Integer> keys = ImmutableMap.builder();
+        states = builder.children.values().toArray(new ConversationNode[builder.children.size()]);
+        for (int i = 0; i < states.length; i++) {
+            ids.put(states[i].getRoute(), i);
+            keys.put(states[i].getRoute().toString(), i);
+        }
+        stateIds = ids.build();
+        stateKeys = keys.build();
+        transitions = new int[states.length];
+        for (int i = 0; i < states.length; i++) {
+            transitions[i] = compileTransition(states[i]);
+        }
+        prefetch = new int[states.length][];
+        for (int i = 0; i < states.length; i++) {
+            prefetch[i] = compilePrefetch(states[i]);
+        }
         exitKeywords = ImmutableSet.copyOf(builder.exitKeywords);
-        first = builder.first;
+        id = builder.id;
+        first = getState(builder.first);
         onExit = builder.onExit;
         onExpire = builder.onExpire;
         onComplete = builder.onComplete;
-        expireTime = builder.expireTime;
-        timeUnit = builder.timeUnit;
+        expireNanos = builder.timeUnit.toNanos(builder.expireTime);
+        retention = builder.retention;
         suppressMessages = builder.suppressMessages;
+        maxInputLength = builder.maxInputLength;
+        maxQueuedInputs = builder.maxQueuedInputs;
+        inputRate = builder.inputRate;
+        inputBurst = builder.inputBurst;
+        coalesceInputs = builder.coalesceInputs;
+        inputPolicy = builder.inputPolicy;
     }
 
     @Override
@@ -50,22 +95,119 @@ public final class ConversationSpec implements CommandExecutor {
     }
 
     public CommandResult startConversation(CommandSource source) throws CommandException {
-        try {
-            Conversation conversation = new Conversation(source, this);
-            Converse.getConversationManager().addConversation(conversation);
-            conversation.nextRoute(first);
-            return CommandResult.success();
-        } catch (ConversationException e) {
-            throw new CommandException(e.getText(), false);
+        Conversation conversation = new Conversation(source, this);
+        Converse.getConversationManager().addConversation(conversation);
+        Converse.getConversationManager().logStart(conversation);
+        conversation.nextState(first);
+        return CommandResult.success();
+    }
+
+    /**
+     * Start a Conversation for each of the CommandSources, such as every player online for a server-wide poll.
+     * May be called from any thread.
+     * The Conversations are registered immediately, but their first prompts are sent a limited number per tick.
+     * A first prompt that does not depend on the CommandSource (see ConversationPrompt.of and
+     * ConversationPrompt.shared) is rendered only once.
+     * @param sources The CommandSources to start Conversations with
+     * @param perTick The maximum number of first prompts sent per tick. Batches in progress at the same time share the
+     *                largest of their limits rather than each sending their own.
+     */
+    public void startConversations(Collection<? extends CommandSource> sources, int perTick) {
+        Preconditions.checkArgument(perTick > 0, "Must send at least one prompt per tick");
+        List<Conversation> conversations = new ArrayList<>(sources.size());
+        for (CommandSource source : sources) {
+            conversations.add(new Conversation(source, this));
         }
+
+        ConversationManager manager = Converse.getConversationManager();
+        manager.addConversations(conversations);
+        conversations.forEach(manager::logStart);
+
+        ConversationNode node = states[first];
+        Text shared = null;
+        if (!node.getAsyncPrompt().isPresent() && node.getPrompt() instanceof StaticPrompt) {
+            shared = ((StaticPrompt) node.getPrompt()).getText();
+        } else if (!node.getAsyncPrompt().isPresent() && node.getPrompt() instanceof SharedPrompt) {
+            long start = System.nanoTime();
+            shared = node.getPrompt().apply(null, new ContextCollection(retention));
+            node.getMetrics().prompt.record(System.nanoTime() - start);
+        }
+        manager.startBatch(new StartBatch(conversations, first, shared, perTick));
+    }
+
+    /**
+     * Start a Conversation for each of the CommandSources, sending at most 50 first prompts per tick
+     * @param sources The CommandSources to start Conversations with
+     */
+    public void startConversations(Collection<? extends CommandSource> sources) {
+        startConversations(sources, 50);
     }
 
     public CommandSpec.Builder toCommand() {
         return CommandSpec.builder().executor(this);
     }
 
-    Optional<ConversationNode> getNode(ConversationRoute key) {
-        return Optional.ofNullable(nodes.get(key));
+    /**
+     * @return The identifier of this spec, or null if none was given
+     */
+    @Nullable
+    String getId() {
+        return id;
+    }
+
+    /**
+     * @return The id of the spec, or the route of its first node if it has no id
+     */
+    String getName() {
+        return id != null ? id : states[first].getRoute().toString();
+    }
+
+    SpecMetrics getMetrics() {
+        return metrics;
+    }
+
+    int getStateCount() {
+        return states.length;
+    }
+
+    int getFirst() {
+        return first;
+    }
+
+    /**
+     * @return The state id of the given route, END or EXIT for the terminal routes, or NONE if the route is unknown
+     */
+    int getState(ConversationRoute route) {
+        if (route.isExit()) {
+            return EXIT;
+        }
+        if (route.isTerminal()) {
+            return END;
+        }
+        Integer state = stateIds.get(route);
+        if (state == null) {
+            // a route resolved before its node was declared is not the canonical instance
+            state = stateKeys.get(route.toString());
+        }
+        return state != null ? state : NONE;
+    }
+
+    ConversationNode getNode(int state) {
+        return states[state];
+    }
+
+    /**
+     * @return The state that the given state always moves on to, or DYNAMIC if it must be decided by the router
+     */
+    int getTransition(int state) {
+        return transitions[state];
+    }
+
+    /**
+     * @return The states whose async prompts are prefetched while the given state waits for input
+     */
+    int[] getPrefetch(int state) {
+        return prefetch[state];
     }
 
     boolean isExitKeyword(String input) {
@@ -76,24 +218,75 @@ public final class ConversationSpec implements CommandExecutor {
         return suppressMessages;
     }
 
-    long getExpireTime() {
-        return expireTime;
+    RetentionPolicy getRetention() {
+        return retention;
+    }
+
+    long getExpireNanos() {
+        return expireNanos;
+    }
+
+    int getMaxInputLength() {
+        return maxInputLength;
+    }
+
+    int getMaxQueuedInputs() {
+        return maxQueuedInputs;
     }
 
-    TimeUnit getTimeUnit() {
-        return timeUnit;
+    boolean coalescesInputs() {
+        return coalesceInputs;
+    }
+
+    InputPolicy getInputPolicy() {
+        return inputPolicy;
+    }
+
+    /**
+     * @return A rate limiter for a new Conversation, or null if input is not rate limited
+     */
+    @Nullable
+    TokenBucket newRateLimiter(long now) {
+        return inputRate > 0 ? new TokenBucket(inputRate, inputBurst, now) : null;
     }
 
     void onExit(Conversation conversation) {
+        metrics.exited.increment();
         onExit.accept(conversation);
+        conversation.flush();
     }
 
     void onExpire(Conversation conversation) {
+        metrics.expired.increment();
         onExpire.accept(conversation);
+        conversation.flush();
     }
 
     void onComplete(Conversation conversation) {
+        metrics.completed.increment();
         onComplete.accept(conversation);
+        conversation.flush();
+    }
+
+    private int compileTransition(ConversationNode node) {
+        Optional<ConversationRoute> target = node.getTarget();
+        if (!target.isPresent()) {
+            return DYNAMIC;
+        }
+        int state = getState(target.get());
+        Preconditions.checkState(state != NONE, "ConversationNode '%s' routes to unknown node '%s'", node.getRoute(), target.get());
+        return state;
+    }
+
+    private int[] compilePrefetch(ConversationNode node) {
+        return node.getPrefetchRoutes().stream()
+                .mapToInt(route -> {
+                    int state = getState(route);
+                    Preconditions.checkState(state != NONE, "ConversationNode '%s' prefetches unknown node '%s'", node.getRoute(), route);
+                    return state;
+                })
+                .filter(state -> state >= 0 && states[state].getAsyncPrompt().isPresent())
+                .toArray();
     }
 
     public static Builder builder() {
@@ -102,7 +295,7 @@ public final class ConversationSpec implements CommandExecutor {
 
     public static class Builder {
 
-        private Map<ConversationRoute, ConversationNode> children = new HashMap<>();
+        private Map<ConversationRoute, ConversationNode> children = new LinkedHashMap<>();
         private Set<String> exitKeywords = Sets.newHashSet("exit");
         private ConversationRoute first = null;
         private Consumer<Conversation> onExit = event(Text.of("The conversation has ended"));
@@ -111,9 +304,31 @@ public final class ConversationSpec implements CommandExecutor {
         private TimeUnit timeUnit = TimeUnit.MINUTES;
         private long expireTime = 1L;
         private boolean suppressMessages = true;
+        private RetentionPolicy retention = RetentionPolicy.all();
+        private String id = null;
+        private int maxInputLength = 0;
+        private int maxQueuedInputs = 32;
+        private double inputRate = 0D;
+        private int inputBurst = 0;
+        private boolean coalesceInputs = false;
+        private InputPolicy inputPolicy = InputPolicy.REJECT;
 
         private Builder() {}
 
+        /**
+         * Give the spec a unique identifier. Specs with an identifier are registered with the ConversationManager
+         * when built so that their Conversations can be journaled and resumed. Building a second spec with the same
+         * identifier replaces the first, so that specs can be reloaded; Conversations are resumed with the latest.
+         * @param id The identifier, which must not change between server restarts
+         * @return The current Builder
+         */
+        public ConversationSpec.Builder id(String id) {
+            Preconditions.checkNotNull(id);
+            Preconditions.checkArgument(!id.isEmpty());
+            this.id = id;
+            return this;
+        }
+
         /**
          * Register the given ConversationNodes with the spec
          * @param children The ConversationNodes to be registered
@@ -195,6 +410,19 @@ public final class ConversationSpec implements CommandExecutor {
             return this;
         }
 
+        /**
+         * Specify how many of the ConversationContexts produced by repeated visits to a node are kept. Nodes may
+         * override this with their own policy.
+         * By default, all contexts are kept
+         * @param policy The RetentionPolicy
+         * @return The current builder
+         */
+        public ConversationSpec.Builder retention(RetentionPolicy policy) {
+            Preconditions.checkNotNull(policy);
+            this.retention = policy;
+            return this;
+        }
+
         /**
          * Specify how long the Conversation wait for input before it expires and is disposed.
          * The default is 1 minute
@@ -209,17 +437,79 @@ public final class ConversationSpec implements CommandExecutor {
             return this;
         }
 
+        /**
+         * Limit the length of input, which is checked before it is queued or tokenized. Input is unlimited by
+         * default, or if the length given is zero.
+         * @param length The maximum number of characters
+         * @return The current Builder
+         */
+        public Builder maxInputLength(int length) {
+            Preconditions.checkArgument(length >= 0, "Length cannot be negative");
+            this.maxInputLength = length;
+            return this;
+        }
+
+        /**
+         * Limit the number of inputs each Conversation may have waiting to be processed. The default is 32.
+         * @param count The maximum number of queued inputs
+         * @return The current Builder
+         */
+        public Builder maxQueuedInputs(int count) {
+            Preconditions.checkArgument(count > 0, "At least one input must be allowed");
+            this.maxQueuedInputs = count;
+            return this;
+        }
+
+        /**
+         * Rate limit the input of each Conversation with a token bucket. Input is not rate limited by default.
+         * @param perSecond The sustained number of inputs allowed per second
+         * @param burst The number of inputs allowed in quick succession
+         * @return The current Builder
+         */
+        public Builder inputRate(double perSecond, int burst) {
+            Preconditions.checkArgument(perSecond > 0, "Rate must be greater than zero");
+            Preconditions.checkArgument(burst > 0, "Burst must be at least one");
+            this.inputRate = perSecond;
+            this.inputBurst = burst;
+            return this;
+        }
+
+        /**
+         * Coalesce queued input, so that only the most recent input received before the Conversation is next
+         * processed is kept
+         * @return The current Builder
+         */
+        public Builder coalesceInputs() {
+            this.coalesceInputs = true;
+            return this;
+        }
+
+        /**
+         * Set what happens to input that exceeds the input limits. The default is to reject it with a message.
+         * @param policy The InputPolicy
+         * @return The current Builder
+         */
+        public Builder inputPolicy(InputPolicy policy) {
+            Preconditions.checkNotNull(policy);
+            this.inputPolicy = policy;
+            return this;
+        }
+
         /**
          * Build the new ConversationSpec. The 'first' node must be specified
          * @return The newly create ConversationSpec
          */
         public ConversationSpec build() {
             Preconditions.checkNotNull(first, "The root ConversationNode cannot be null!");
-            return new ConversationSpec(this);
+            ConversationSpec spec = new ConversationSpec(this);
+            if (spec.getId() != null) {
+                Converse.getConversationManager().registerSpec(spec);
+            }
+            return spec;
         }
 
         private static Consumer<Conversation> event(Text message) {
-            return conversation -> conversation.getSource().ifPresent(source -> source.sendMessage(message));
+            return conversation -> conversation.send(message);
         }
     }
 }
@@ -0,0 +1,31 @@
+package me.dags.converse;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Stores Conversations handed off between servers. When a CommandSource disconnects mid-conversation, the
+ * ConversationManager saves the Conversation to the store, and when the CommandSource next joins a server sharing
+ * the store the Conversation is loaded and resumed there.
+ *
+ * Entries are opaque, versioned byte arrays keyed by the identifier of the CommandSource. Stores are only called
+ * from worker threads, so implementations may block.
+ */
+public interface ConversationStore {
+
+    /**
+     * @param identifier The identifier of the CommandSource
+     * @param data The encoded Conversation
+     * @throws IOException If the Conversation cannot be stored
+     */
+    void save(String identifier, byte[] data) throws IOException;
+
+    /**
+     * Load and remove the Conversation stored for the CommandSource, so that it is only resumed once. Taking must be
+     * atomic: if several servers take the same entry at once, only one of them may receive it.
+     * @param identifier The identifier of the CommandSource
+     * @return The encoded Conversation if one was stored
+     * @throws IOException If the stored Conversation cannot be read
+     */
+    Optional<byte[]> take(String identifier) throws IOException;
+}
@@ -1,19 +1,22 @@
 package me.dags.converse;
 
+import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.spec.CommandSpec;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.Order;
 import org.spongepowered.api.event.command.TabCompleteEvent;
 import org.spongepowered.api.event.filter.cause.Root;
 import org.spongepowered.api.event.game.state.GameInitializationEvent;
+import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
 import org.spongepowered.api.event.message.MessageChannelEvent;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
 import org.spongepowered.api.plugin.Plugin;
-import org.spongepowered.api.scheduler.Task;
-import org.spongepowered.api.text.channel.MutableMessageChannel;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.MessageChannel;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author dags <dags@dags.me>
@@ -30,11 +33,29 @@ public final class Converse {
 
     @Listener
     public void onInit(GameInitializationEvent event) {
-        Task.builder()
-                .async()
-                .interval(10, TimeUnit.SECONDS)
-                .execute(() -> Converse.getConversationManager().tickConversations(this))
-                .submit(this);
+        Converse.getConversationManager().start(this);
+
+        CommandSpec metrics = CommandSpec.builder()
+                .description(Text.of("Show conversation metrics"))
+                .permission(ID + ".command.metrics")
+                .executor(new MetricsCommand())
+                .build();
+        Sponge.getCommandManager().register(this, CommandSpec.builder().child(metrics, "metrics").build(), ID);
+    }
+
+    @Listener
+    public void onStopping(GameStoppingServerEvent event) {
+        Converse.getConversationManager().stop();
+    }
+
+    @Listener
+    public void onJoin(ClientConnectionEvent.Join event) {
+        Converse.getConversationManager().resume(event.getTargetEntity());
+    }
+
+    @Listener
+    public void onDisconnect(ClientConnectionEvent.Disconnect event) {
+        Converse.getConversationManager().disconnect(event.getTargetEntity());
     }
 
     @Listener(order = Order.LAST)
@@ -52,8 +73,11 @@ public final class Converse {
             return;
         }
 
-        MutableMessageChannel channel = event.getChannel().orElse(event.getOriginalChannel()).asMutable();
-        Converse.getConversationManager().removeFromChannel(channel);
+        MessageChannel channel = event.getChannel().orElse(event.getOriginalChannel());
+        MessageChannel filtered = Converse.getConversationManager().filterChannel(channel);
+        if (filtered != channel) {
+            event.setChannel(filtered);
+        }
     }
 
     @Listener (order = Order.PRE)
@@ -67,7 +91,7 @@ public final class Converse {
             event.setCancelled(true);
             event.setMessageCancelled(true);
             String raw = event.getRawMessage().toPlain();
-            Converse.getConversationManager().process(this, conversation.get(), raw);
+            Converse.getConversationManager().process(conversation.get(), raw);
         }
     }
 }
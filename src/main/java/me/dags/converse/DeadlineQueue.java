@@ -0,0 +1,128 @@
+package me.dags.converse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * Orders Conversations by the instant they become due (for example, when they expire) so that each tick only
+ * visits Conversations whose deadline has passed.
+ *
+ * Entries are re-armed lazily: punching in only moves the Conversation's own deadline forward. When an entry's
+ * armed deadline is reached, the Conversation's current deadline is checked and the entry is either reported as
+ * due or re-queued against the later deadline.
+ *
+ * Each Conversation has at most one entry. Removing a Conversation detaches it from its entry, so that a
+ * Conversation that ends early is not kept reachable until its original deadline.
+ *
+ * Deadlines are compared by their difference so that they are unaffected by the ticker's origin. Delays are capped
+ * so that a deadline never overflows, however large the configured timeout.
+ */
+final class DeadlineQueue {
+
+    private static final long MAX_DELAY = Long.MAX_VALUE >> 2;
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Map<Conversation, Entry> entries = new IdentityHashMap<>();
+    private final ToLongFunction<Conversation> deadline;
+
+    DeadlineQueue(ToLongFunction<Conversation> deadline) {
+        this.deadline = deadline;
+    }
+
+    synchronized void schedule(Conversation conversation) {
+        schedule(conversation, deadline.applyAsLong(conversation));
+    }
+
+    synchronized void scheduleAll(Collection<Conversation> conversations) {
+        for (Conversation conversation : conversations) {
+            schedule(conversation, deadline.applyAsLong(conversation));
+        }
+    }
+
+    /**
+     * Arm the Conversation's entry for the given instant. An entry already armed for an earlier instant is left
+     * as-is, as it is re-armed lazily when reached.
+     */
+    synchronized void schedule(Conversation conversation, long armed) {
+        Entry entry = entries.get(conversation);
+        if (entry != null) {
+            if (armed - entry.deadline >= 0) {
+                return;
+            }
+            queue.remove(entry);
+            entry.deadline = armed;
+            queue.add(entry);
+            return;
+        }
+        entry = new Entry(conversation, armed);
+        entries.put(conversation, entry);
+        queue.add(entry);
+    }
+
+    /**
+     * Detach the Conversation from its entry. The entry itself is discarded once its deadline is reached.
+     */
+    synchronized void remove(Conversation conversation) {
+        Entry entry = entries.remove(conversation);
+        if (entry != null) {
+            entry.conversation = null;
+        }
+    }
+
+    synchronized void clear() {
+        queue.clear();
+        entries.clear();
+    }
+
+    synchronized List<Conversation> poll(long now) {
+        List<Conversation> due = Collections.emptyList();
+        while (!queue.isEmpty() && queue.peek().deadline - now <= 0) {
+            Entry entry = queue.poll();
+            Conversation conversation = entry.conversation;
+            if (conversation == null) {
+                continue;
+            }
+            long current = deadline.applyAsLong(conversation);
+            if (current - now <= 0) {
+                entries.remove(conversation);
+                if (due.isEmpty()) {
+                    due = new ArrayList<>();
+                }
+                due.add(conversation);
+            } else {
+                entry.deadline = current;
+                queue.add(entry);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @return The instant the delay after the given instant ends, with the delay capped so that it cannot overflow
+     */
+    static long deadline(long from, long delay) {
+        return from + Math.min(delay, MAX_DELAY);
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        private Conversation conversation;
+        private long deadline;
+
+        private Entry(Conversation conversation, long deadline) {
+            this.conversation = conversation;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Long.compare(deadline - other.deadline, 0L);
+        }
+    }
+}
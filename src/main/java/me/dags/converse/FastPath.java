@@ -0,0 +1,21 @@
+package me.dags.converse;
+
+/**
+ * Parses the input of a node with a single, simple parameter directly from the raw input string, without
+ * tokenizing it or going through a CommandContext. Experimental: only used by nodes built with
+ * ConversationNode.Builder.experimentalFastPaths.
+ *
+ * A FastPath only accepts input that it is certain the parameter's CommandElement would parse to the same value.
+ * Anything else, including quoted input and invalid values, is left to the general parser, which then produces
+ * the value or the usual error message. FastPaths for the parameter types added by ConversationNode.Builder are
+ * created by FastPaths.
+ */
+@FunctionalInterface
+interface FastPath {
+
+    /**
+     * @return true if the input was parsed into the slot of the empty context, false to fall back to the general
+     * parser
+     */
+    boolean parse(String input, ConversationContext context, int slot);
+}
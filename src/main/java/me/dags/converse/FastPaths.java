@@ -0,0 +1,192 @@
+package me.dags.converse;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * FastPaths matching the CommandElements created by GenericArguments for the common single-parameter node shapes.
+ * Only unquoted input is handled; the tokenizer's quote and escape handling is left to the general parser.
+ */
+final class FastPaths {
+
+    private static final Map<String, Boolean> BOOLEANS = ImmutableMap.<String, Boolean>builder()
+            .put("true", true).put("t", true).put("yes", true).put("y", true)
+            .put("false", false).put("f", false).put("no", false).put("n", false)
+            .build();
+
+    private FastPaths() {}
+
+    static FastPath integer() {
+        return (input, context, slot) -> {
+            String token = token(input);
+            if (token == null || !isInteger(token)) {
+                return false;
+            }
+            try {
+                context.putInt(slot, Integer.parseInt(token));
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        };
+    }
+
+    static FastPath doubleNum() {
+        return (input, context, slot) -> {
+            String token = token(input);
+            if (token == null || !isDecimal(token)) {
+                return false;
+            }
+            context.putDouble(slot, Double.parseDouble(token));
+            return true;
+        };
+    }
+
+    static FastPath bool() {
+        return (input, context, slot) -> {
+            String token = token(input);
+            Boolean value = token != null ? BOOLEANS.get(token) : null;
+            if (value == null) {
+                return false;
+            }
+            context.putBoolean(slot, value);
+            return true;
+        };
+    }
+
+    static FastPath choices(Map<String, ?> choices) {
+        Map<String, ?> copy = ImmutableMap.copyOf(choices);
+        return (input, context, slot) -> {
+            String token = token(input);
+            Object value = token != null ? copy.get(token) : null;
+            if (value == null) {
+                return false;
+            }
+            context.putValue(slot, value);
+            return true;
+        };
+    }
+
+    static FastPath string() {
+        return (input, context, slot) -> {
+            String token = token(input);
+            if (token == null) {
+                return false;
+            }
+            context.putValue(slot, token);
+            return true;
+        };
+    }
+
+    /**
+     * Matches GenericArguments.remainingJoinedStrings, which joins the tokens of the input with single spaces
+     */
+    static FastPath joinedStrings() {
+        return (input, context, slot) -> {
+            String joined = joined(input);
+            if (joined == null) {
+                return false;
+            }
+            context.putValue(slot, joined);
+            return true;
+        };
+    }
+
+    /**
+     * @return The first whitespace-separated token of the input, or null if there is none or the input contains
+     * characters the tokenizer treats specially
+     */
+    @Nullable
+    private static String token(String input) {
+        int start = 0;
+        int length = input.length();
+        while (start < length && Character.isWhitespace(input.charAt(start))) {
+            start++;
+        }
+        int end = start;
+        while (end < length && !Character.isWhitespace(input.charAt(end))) {
+            if (isSpecial(input.charAt(end))) {
+                return null;
+            }
+            end++;
+        }
+        return end > start ? input.substring(start, end) : null;
+    }
+
+    /**
+     * @return The tokens of the input joined with single spaces, or null if there are none or the input contains
+     * characters the tokenizer treats specially. The input itself is returned if it is already in that form.
+     */
+    @Nullable
+    private static String joined(String input) {
+        int length = input.length();
+        boolean normal = length > 0;
+        boolean space = true;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (isSpecial(c)) {
+                return null;
+            }
+            boolean whitespace = Character.isWhitespace(c);
+            if (whitespace && (space || c != ' ')) {
+                normal = false;
+            }
+            space = whitespace;
+        }
+        if (space) {
+            normal = false;
+        }
+        if (normal) {
+            return input;
+        }
+
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                if (builder.length() > 0 && Character.isWhitespace(input.charAt(i - 1))) {
+                    builder.append(' ');
+                }
+                builder.append(c);
+            }
+        }
+        return builder.length() > 0 ? builder.toString() : null;
+    }
+
+    private static boolean isSpecial(char c) {
+        return c == '"' || c == '\'' || c == '\\';
+    }
+
+    private static boolean isInteger(String token) {
+        int start = token.charAt(0) == '-' || token.charAt(0) == '+' ? 1 : 0;
+        if (start == token.length() || token.length() - start > 9) {
+            return false;
+        }
+        for (int i = start; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDecimal(String token) {
+        int start = token.charAt(0) == '-' || token.charAt(0) == '+' ? 1 : 0;
+        boolean digits = false;
+        boolean point = false;
+        for (int i = start; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '.' && !point) {
+                point = true;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+            } else {
+                return false;
+            }
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,55 @@
+package me.dags.converse;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A ConversationStore keeping one file per CommandSource in a directory, for example on a volume shared by the
+ * servers behind a proxy. Intended for testing and small networks.
+ */
+public final class FileConversationStore implements ConversationStore {
+
+    private final Path directory;
+
+    public FileConversationStore(Path directory) throws IOException {
+        Preconditions.checkNotNull(directory);
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public void save(String identifier, byte[] data) throws IOException {
+        Path file = file(identifier);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        Files.write(temp, data);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public Optional<byte[]> take(String identifier) throws IOException {
+        // claim the entry with an atomic rename, so that only one server can take it
+        Path file = file(identifier);
+        Path claim = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".claim");
+        try {
+            Files.move(file, claim, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(Files.readAllBytes(claim));
+        } finally {
+            Files.deleteIfExists(claim);
+        }
+    }
+
+    private Path file(String identifier) {
+        return directory.resolve(identifier.replaceAll("[^A-Za-z0-9._-]", "_") + ".conversation");
+    }
+}
@@ -0,0 +1,18 @@
+package me.dags.converse;
+
+/**
+ * What happens to input that exceeds a Conversation's input limits: its maximum length, its rate limit or the
+ * number of inputs it may have queued.
+ */
+public enum InputPolicy {
+
+    /**
+     * The input is discarded without telling the CommandSource
+     */
+    DROP,
+
+    /**
+     * The input is discarded and the CommandSource is told why
+     */
+    REJECT
+}
@@ -0,0 +1,81 @@
+package me.dags.converse;
+
+import com.google.common.collect.Maps;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.TextTemplate;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A ConversationNode's input TextTemplate bound to the node's ContextSchema.
+ * Each template argument is resolved to its ContextSlot when the node is built, so rendering reads the parsed
+ * values directly rather than materializing the whole ConversationContext into a map.
+ */
+final class InputTemplate {
+
+    static final String RAW_INPUT = "raw_input";
+
+    private final TextTemplate template;
+    private final String[] names;
+    private final ContextSlot[] slots;
+
+    InputTemplate(TextTemplate template, ContextSchema schema) {
+        this.template = template;
+        this.names = template.getArguments().keySet().toArray(new String[0]);
+        this.slots = new ContextSlot[names.length];
+        for (int i = 0; i < names.length; i++) {
+            slots[i] = schema.getSlot(names[i]);
+        }
+    }
+
+    TextTemplate getTemplate() {
+        return template;
+    }
+
+    Text apply(ConversationContext context, String input) {
+        return template.apply(new Args(context, input)).build();
+    }
+
+    private final class Args extends AbstractMap<String, Object> {
+
+        private final ConversationContext context;
+        private final String input;
+
+        private Args(ConversationContext context, String input) {
+            this.context = context;
+            this.input = input;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (RAW_INPUT.equals(key)) {
+                return input;
+            }
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(key)) {
+                    return slots[i] != null ? context.getArg(slots[i]) : context.getArg(names[i]);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            Set<Entry<String, Object>> entries = new LinkedHashSet<>();
+            for (String name : names) {
+                Object value = get(name);
+                if (value != null) {
+                    entries.add(Maps.immutableEntry(name, value));
+                }
+            }
+            return entries;
+        }
+    }
+}
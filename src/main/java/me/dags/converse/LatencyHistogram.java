@@ -0,0 +1,56 @@
+package me.dags.converse;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies into power-of-two nanosecond buckets.
+ * Buckets are striped (LongAdder) so that recording from several threads at once does not contend, and percentiles
+ * are reported as the upper bound of the bucket they fall in.
+ */
+final class LatencyHistogram {
+
+    private final LongAdder[] buckets = new LongAdder[64];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        long value = Math.max(nanos, 1L);
+        buckets[63 - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    MetricsSnapshot.Latency snapshot() {
+        long[] counts = new long[buckets.length];
+        long sum = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+            sum += counts[i];
+        }
+        long mean = sum > 0 ? total.sum() / Math.max(count.sum(), 1L) : 0L;
+        return new MetricsSnapshot.Latency(sum, mean, percentile(counts, sum, 0.5), percentile(counts, sum, 0.99), max.get());
+    }
+
+    private static long percentile(long[] counts, long sum, double percentile) {
+        long rank = (long) Math.ceil(sum * percentile);
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return 0L;
+    }
+}
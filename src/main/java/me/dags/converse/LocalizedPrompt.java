@@ -0,0 +1,40 @@
+package me.dags.converse;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.text.Text;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * A ConversationPrompt whose Text depends only on the locale of the CommandSource.
+ * The Text is rendered once per locale and cached, evicting the least recently used locales once the cache is full.
+ * CommandSources without a locale of their own (such as the console) are prompted in the server's default locale.
+ */
+final class LocalizedPrompt implements ConversationPrompt {
+
+    static final int MAX_LOCALES = 32;
+
+    private final LoadingCache<Locale, Text> rendered;
+
+    LocalizedPrompt(Function<Locale, Text> function) {
+        Preconditions.checkNotNull(function);
+        this.rendered = CacheBuilder.newBuilder().maximumSize(MAX_LOCALES).build(new CacheLoader<Locale, Text>() {
+            @Override
+            public Text load(Locale locale) {
+                return Preconditions.checkNotNull(function.apply(locale), "Rendered a null prompt for %s", locale);
+            }
+        });
+    }
+
+    @Override
+    public Text apply(CommandSource src, ContextCollection contexts) {
+        Locale locale = src instanceof Player ? ((Player) src).getLocale() : Locale.getDefault();
+        return rendered.getUnchecked(locale);
+    }
+}
@@ -0,0 +1,50 @@
+package me.dags.converse;
+
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.text.Text;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a snapshot of the ConversationMetrics to the CommandSource
+ */
+final class MetricsCommand implements CommandExecutor {
+
+    @Override
+    public CommandResult execute(CommandSource src, CommandContext args) {
+        MetricsSnapshot snapshot = Converse.getConversationManager().getMetrics().snapshot();
+        src.sendMessage(Text.of("Active conversations: ", snapshot.getActive()));
+        for (MetricsSnapshot.SpecSnapshot spec : snapshot.getSpecs()) {
+            src.sendMessage(Text.of(
+                    spec.getName(),
+                    ": active=", spec.getActive(),
+                    ", started=", spec.getStarted(),
+                    ", completed=", spec.getCompleted(),
+                    ", exited=", spec.getExited(),
+                    ", expired=", spec.getExpired(),
+                    ", rejected inputs=", spec.getRejected()
+            ));
+            for (MetricsSnapshot.NodeSnapshot node : spec.getNodes()) {
+                src.sendMessage(Text.of(
+                        "  ", node.getRoute(),
+                        ": parse ", format(node.getParse()),
+                        ", failures=", node.getParseFailures(),
+                        ", route ", format(node.getRouting()),
+                        ", prompt ", format(node.getPrompt())
+                ));
+            }
+        }
+        return CommandResult.success();
+    }
+
+    private static String format(MetricsSnapshot.Latency latency) {
+        return String.format("n=%d p50=%dus p99=%dus", latency.getCount(), micros(latency.getP50()), micros(latency.getP99()));
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,14 @@
+package me.dags.converse;
+
+/**
+ * Receives periodic MetricsSnapshots, for example to publish them to a monitoring system.
+ * Exporters are called off the main thread.
+ */
+@FunctionalInterface
+public interface MetricsExporter {
+
+    /**
+     * @param snapshot The metrics at the time of export.
+     */
+    void export(MetricsSnapshot snapshot);
+}
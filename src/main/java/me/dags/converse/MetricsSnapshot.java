@@ -0,0 +1,169 @@
+package me.dags.converse;
+
+import java.util.List;
+
+/**
+ * An immutable point-in-time copy of the ConversationMetrics.
+ * Latencies are in nanoseconds.
+ */
+public final class MetricsSnapshot {
+
+    private final List<SpecSnapshot> specs;
+
+    MetricsSnapshot(List<SpecSnapshot> specs) {
+        this.specs = specs;
+    }
+
+    public List<SpecSnapshot> getSpecs() {
+        return specs;
+    }
+
+    public long getActive() {
+        return specs.stream().mapToLong(SpecSnapshot::getActive).sum();
+    }
+
+    public static final class SpecSnapshot {
+
+        private final String name;
+        private final long active;
+        private final long started;
+        private final long completed;
+        private final long exited;
+        private final long expired;
+        private final long rejected;
+        private final List<NodeSnapshot> nodes;
+
+        SpecSnapshot(String name, long active, long started, long completed, long exited, long expired, long rejected, List<NodeSnapshot> nodes) {
+            this.name = name;
+            this.active = active;
+            this.started = started;
+            this.completed = completed;
+            this.exited = exited;
+            this.expired = expired;
+            this.rejected = rejected;
+            this.nodes = nodes;
+        }
+
+        /**
+         * @return The spec's id, or the route of its first node if it has no id
+         */
+        public String getName() {
+            return name;
+        }
+
+        public long getActive() {
+            return active;
+        }
+
+        /**
+         * @return The number of Conversations started on this server, including those resumed from the journal or
+         * handed off from another server
+         */
+        public long getStarted() {
+            return started;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getExited() {
+            return exited;
+        }
+
+        public long getExpired() {
+            return expired;
+        }
+
+        /**
+         * @return The number of inputs dropped or rejected for exceeding the spec's input limits
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public List<NodeSnapshot> getNodes() {
+            return nodes;
+        }
+    }
+
+    public static final class NodeSnapshot {
+
+        private final String route;
+        private final long parseFailures;
+        private final Latency parse;
+        private final Latency routing;
+        private final Latency prompt;
+
+        NodeSnapshot(String route, long parseFailures, Latency parse, Latency routing, Latency prompt) {
+            this.route = route;
+            this.parseFailures = parseFailures;
+            this.parse = parse;
+            this.routing = routing;
+            this.prompt = prompt;
+        }
+
+        public String getRoute() {
+            return route;
+        }
+
+        public long getParseFailures() {
+            return parseFailures;
+        }
+
+        public Latency getParse() {
+            return parse;
+        }
+
+        public Latency getRouting() {
+            return routing;
+        }
+
+        public Latency getPrompt() {
+            return prompt;
+        }
+    }
+
+    public static final class Latency {
+
+        private final long count;
+        private final long mean;
+        private final long p50;
+        private final long p99;
+        private final long max;
+
+        Latency(long count, long mean, long p50, long p99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return mean;
+        }
+
+        /**
+         * @return The upper bound of the histogram bucket holding the median
+         */
+        public long getP50() {
+            return p50;
+        }
+
+        /**
+         * @return The upper bound of the histogram bucket holding the 99th percentile
+         */
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
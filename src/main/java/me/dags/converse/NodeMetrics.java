@@ -0,0 +1,24 @@
+package me.dags.converse;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Parse, route and prompt latencies and parse failures of a single ConversationNode
+ */
+final class NodeMetrics {
+
+    final LatencyHistogram parse = new LatencyHistogram();
+    final LatencyHistogram route = new LatencyHistogram();
+    final LatencyHistogram prompt = new LatencyHistogram();
+    final LongAdder parseFailures = new LongAdder();
+
+    MetricsSnapshot.NodeSnapshot snapshot(ConversationNode node) {
+        return new MetricsSnapshot.NodeSnapshot(
+                node.getRoute().toString(),
+                parseFailures.sum(),
+                parse.snapshot(),
+                route.snapshot(),
+                prompt.snapshot()
+        );
+    }
+}
@@ -0,0 +1,37 @@
+package me.dags.converse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A sorted index of a parameter's static choices.
+ * Completions for a prefix are found with two binary searches and returned as a view over the index, so no
+ * choices are scanned or copied.
+ */
+final class PrefixIndex {
+
+    private final String[] keys;
+    private final List<String> view;
+
+    PrefixIndex(Iterable<String> choices) {
+        List<String> list = new ArrayList<>();
+        choices.forEach(list::add);
+        this.keys = list.toArray(new String[list.size()]);
+        Arrays.sort(keys);
+        this.view = Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    List<String> complete(String prefix) {
+        int from = Arrays.binarySearch(keys, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int to = Arrays.binarySearch(keys, from, keys.length, prefix + Character.MAX_VALUE);
+        if (to < 0) {
+            to = -to - 1;
+        }
+        return view.subList(from, to);
+    }
+}
@@ -0,0 +1,211 @@
+package me.dags.converse;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Determines how many of the ConversationContexts produced by repeated visits to a ConversationNode are kept in
+ * the Conversation's ContextCollection.
+ *
+ * Policies may be set for a whole ConversationSpec and overridden per ConversationNode. The ContextCollection
+ * getters behave as before within the window of contexts that a policy retains.
+ */
+public abstract class RetentionPolicy {
+
+    private static final RetentionPolicy ALL = new RetentionPolicy() {
+        @Override
+        History create() {
+            return new All();
+        }
+    };
+
+    private static final RetentionPolicy FIRST_AND_LAST = new RetentionPolicy() {
+        @Override
+        History create() {
+            return new FirstAndLast();
+        }
+    };
+
+    private static final RetentionPolicy NONE = new RetentionPolicy() {
+        @Override
+        History create() {
+            return None.INSTANCE;
+        }
+    };
+
+    private RetentionPolicy() {}
+
+    abstract History create();
+
+    /**
+     * Keep every context (the default)
+     */
+    public static RetentionPolicy all() {
+        return ALL;
+    }
+
+    /**
+     * Keep only the most recent contexts
+     * @param count The number of contexts to keep
+     */
+    public static RetentionPolicy last(int count) {
+        Preconditions.checkArgument(count > 0, "Count must be greater than zero");
+        return new RetentionPolicy() {
+            @Override
+            History create() {
+                return new Last(count);
+            }
+        };
+    }
+
+    /**
+     * Keep the first and the most recent contexts
+     */
+    public static RetentionPolicy firstAndLast() {
+        return FIRST_AND_LAST;
+    }
+
+    /**
+     * Keep no contexts. The route is still recorded as visited and the context remains available through
+     * ContextCollection.getCurrent() until the next input is parsed.
+     */
+    public static RetentionPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * The retained contexts of a single route, in order of insertion
+     */
+    interface History {
+
+        void add(ConversationContext context);
+
+        ConversationContext first();
+
+        ConversationContext last();
+
+        List<ConversationContext> all();
+    }
+
+    private static final class All implements History {
+
+        private final List<ConversationContext> contexts = new ArrayList<>(1);
+
+        @Override
+        public void add(ConversationContext context) {
+            contexts.add(context);
+        }
+
+        @Override
+        public ConversationContext first() {
+            return contexts.isEmpty() ? null : contexts.get(0);
+        }
+
+        @Override
+        public ConversationContext last() {
+            return contexts.isEmpty() ? null : contexts.get(contexts.size() - 1);
+        }
+
+        @Override
+        public List<ConversationContext> all() {
+            return Collections.unmodifiableList(contexts);
+        }
+    }
+
+    private static final class Last implements History {
+
+        private final ConversationContext[] ring;
+        private int next = 0;
+        private int size = 0;
+
+        private Last(int count) {
+            this.ring = new ConversationContext[count];
+        }
+
+        @Override
+        public void add(ConversationContext context) {
+            ring[next] = context;
+            next = (next + 1) % ring.length;
+            size = Math.min(size + 1, ring.length);
+        }
+
+        @Override
+        public ConversationContext first() {
+            return size == 0 ? null : ring[(next - size + ring.length) % ring.length];
+        }
+
+        @Override
+        public ConversationContext last() {
+            return size == 0 ? null : ring[(next - 1 + ring.length) % ring.length];
+        }
+
+        @Override
+        public List<ConversationContext> all() {
+            ImmutableList.Builder<ConversationContext> builder = ImmutableList.builder();
+            for (int i = size; i > 0; i--) {
+                builder.add(ring[(next - i + ring.length) % ring.length]);
+            }
+            return builder.build();
+        }
+    }
+
+    private static final class FirstAndLast implements History {
+
+        private ConversationContext first = null;
+        private ConversationContext last = null;
+
+        @Override
+        public void add(ConversationContext context) {
+            if (first == null) {
+                first = context;
+            } else {
+                last = context;
+            }
+        }
+
+        @Override
+        public ConversationContext first() {
+            return first;
+        }
+
+        @Override
+        public ConversationContext last() {
+            return last != null ? last : first;
+        }
+
+        @Override
+        public List<ConversationContext> all() {
+            if (first == null) {
+                return ImmutableList.of();
+            }
+            return last == null ? ImmutableList.of(first) : ImmutableList.of(first, last);
+        }
+    }
+
+    private static final class None implements History {
+
+        private static final None INSTANCE = new None();
+
+        @Override
+        public void add(ConversationContext context) {}
+
+        @Override
+        public ConversationContext first() {
+            return null;
+        }
+
+        @Override
+        public ConversationContext last() {
+            return null;
+        }
+
+        @Override
+        public List<ConversationContext> all() {
+            return ImmutableList.of();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package me.dags.converse;
+
+import com.google.common.base.Preconditions;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+
+import java.util.function.Function;
+
+/**
+ * A ConversationPrompt whose Text depends only on the contexts of the conversation, not on the CommandSource.
+ * When many Conversations are started together, such a prompt is rendered once and sent to all of them.
+ */
+final class SharedPrompt implements ConversationPrompt {
+
+    private final Function<ContextCollection, Text> function;
+
+    SharedPrompt(Function<ContextCollection, Text> function) {
+        Preconditions.checkNotNull(function);
+        this.function = function;
+    }
+
+    @Override
+    public Text apply(CommandSource src, ContextCollection contexts) {
+        return function.apply(contexts);
+    }
+}
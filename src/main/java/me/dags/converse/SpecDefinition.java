@@ -0,0 +1,477 @@
+package me.dags.converse;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import ninja.leaping.configurate.ConfigurationNode;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.serializer.TextSerializers;
+
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The validated contents of a declarative spec file, which the SpecLoader builds a ConversationSpec from.
+ *
+ * A definition is read from a configuration tree once, and is cached in a compact binary form so that an unchanged
+ * file does not have to be parsed or validated again. For example, in HOCON:
+ * <pre>
+ * first = name
+ * timeout = 60
+ * nodes {
+ *   name {
+ *     prompt = "&amp;aWhat is your name?"
+ *     parameters = [{ key = name, type = joined }]
+ *     route = age
+ *   }
+ *   age {
+ *     prompt = "How old are you, {name.name}?"
+ *     parameters = [{ key = age, type = integer }]
+ *     routes = [
+ *       { key = age, at-least = 18, route = end }
+ *       { route = exit }
+ *     ]
+ *   }
+ * }
+ * </pre>
+ *
+ * Prompts use '&amp;' formatting codes, and may refer to the last value of a parameter of any node as
+ * {node.parameter}. A node either has a static 'route', or a decision table of 'routes' that are tried in order
+ * against the node's parsed input, falling back to 'route' (or exiting) if none match. The routes 'end' and 'exit'
+ * complete and exit the conversation respectively.
+ */
+final class SpecDefinition {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([^.{}\\s]+)\\.([^.{}\\s]+)}");
+
+    private final String id;
+    private final String first;
+    private final int timeout;
+    private final boolean suppressMessages;
+    private final List<String> exitKeywords;
+    private final List<NodeDefinition> nodes;
+
+    private SpecDefinition(String id, String first, int timeout, boolean suppressMessages, List<String> exitKeywords, List<NodeDefinition> nodes) {
+        this.id = id;
+        this.first = first;
+        this.timeout = timeout;
+        this.suppressMessages = suppressMessages;
+        this.exitKeywords = exitKeywords;
+        this.nodes = nodes;
+    }
+
+    ConversationSpec build() {
+        Map<String, ConversationNode> built = new LinkedHashMap<>();
+        for (NodeDefinition node : nodes) {
+            built.put(node.route, node.build());
+        }
+
+        ConversationSpec.Builder builder = ConversationSpec.builder()
+                .id(id)
+                .first(built.get(first))
+                .nodes(built.values().toArray(new ConversationNode[built.size()]))
+                .suppressMessages(suppressMessages);
+        if (timeout > 0) {
+            builder.timeOut(timeout, TimeUnit.SECONDS);
+        }
+        if (!exitKeywords.isEmpty()) {
+            builder.exitAliases(exitKeywords.toArray(new String[exitKeywords.size()]));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read and validate a definition from a configuration tree
+     * @param id The id given to the spec if the file does not specify one
+     */
+    static SpecDefinition parse(String id, ConfigurationNode root) {
+        String specId = root.getNode("id").getString(id);
+        Map<Object, ? extends ConfigurationNode> children = root.getNode("nodes").getChildrenMap();
+        Preconditions.checkArgument(!children.isEmpty(), "%s: no nodes are defined", specId);
+
+        Set<String> routes = new HashSet<>();
+        for (Object key : children.keySet()) {
+            String route = key.toString();
+            Preconditions.checkArgument(!isReserved(route), "%s: '%s' cannot be used as a node name", specId, route);
+            routes.add(route);
+        }
+
+        List<NodeDefinition> nodes = new ArrayList<>();
+        for (Map.Entry<Object, ? extends ConfigurationNode> entry : children.entrySet()) {
+            nodes.add(NodeDefinition.parse(specId, entry.getKey().toString(), entry.getValue(), routes));
+        }
+
+        String first = root.getNode("first").getString();
+        Preconditions.checkArgument(first != null, "%s: 'first' is not set", specId);
+        Preconditions.checkArgument(routes.contains(first), "%s: first node '%s' is not defined", specId, first);
+
+        List<String> exitKeywords = new ArrayList<>();
+        for (ConfigurationNode keyword : root.getNode("exit-keywords").getChildrenList()) {
+            exitKeywords.add(keyword.getString());
+        }
+
+        int timeout = root.getNode("timeout").getInt(0);
+        Preconditions.checkArgument(timeout >= 0, "%s: timeout cannot be negative", specId);
+        boolean suppressMessages = root.getNode("suppress-messages").getBoolean(true);
+        return new SpecDefinition(specId, first, timeout, suppressMessages, ImmutableList.copyOf(exitKeywords), ImmutableList.copyOf(nodes));
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(id);
+        out.writeUTF(first);
+        out.writeInt(timeout);
+        out.writeBoolean(suppressMessages);
+        writeStrings(out, exitKeywords);
+        out.writeInt(nodes.size());
+        for (NodeDefinition node : nodes) {
+            node.write(out);
+        }
+    }
+
+    static SpecDefinition read(DataInputStream in) throws IOException {
+        String id = in.readUTF();
+        String first = in.readUTF();
+        int timeout = in.readInt();
+        boolean suppressMessages = in.readBoolean();
+        List<String> exitKeywords = readStrings(in);
+        int size = in.readInt();
+        List<NodeDefinition> nodes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            nodes.add(NodeDefinition.read(in));
+        }
+        return new SpecDefinition(id, first, timeout, suppressMessages, exitKeywords, nodes);
+    }
+
+    private static boolean isReserved(String route) {
+        return route.equalsIgnoreCase("end") || route.equalsIgnoreCase("exit");
+    }
+
+    private static ConversationRoute toRoute(String route) {
+        if (route.equalsIgnoreCase("end")) {
+            return ConversationRoute.end();
+        }
+        if (route.equalsIgnoreCase("exit")) {
+            return ConversationRoute.exit();
+        }
+        return ConversationRoute.declare(route);
+    }
+
+    private static void checkRoute(String spec, String node, @Nullable String route, Set<String> routes) {
+        Preconditions.checkArgument(route != null, "%s: node '%s' has a route without a target", spec, node);
+        Preconditions.checkArgument(isReserved(route) || routes.contains(route), "%s: node '%s' routes to unknown node '%s'", spec, node, route);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static final class NodeDefinition {
+
+        private final String route;
+        private final String prompt;
+        private final boolean suppressInput;
+        private final String target;
+        private final List<ParameterDefinition> parameters;
+        private final List<RuleDefinition> rules;
+
+        private NodeDefinition(String route, String prompt, boolean suppressInput, @Nullable String target, List<ParameterDefinition> parameters, List<RuleDefinition> rules) {
+            this.route = route;
+            this.prompt = prompt;
+            this.suppressInput = suppressInput;
+            this.target = target;
+            this.parameters = parameters;
+            this.rules = rules;
+        }
+
+        private ConversationNode build() {
+            ConversationNode.Builder builder = ConversationNode.route(route).prompt(prompt());
+            for (ParameterDefinition parameter : parameters) {
+                parameter.addTo(builder);
+            }
+            if (suppressInput) {
+                builder.suppressInput();
+            }
+
+            ConversationRoute fallback = target != null ? toRoute(target) : ConversationRoute.exit();
+            if (rules.isEmpty()) {
+                builder.router(fallback);
+            } else {
+                List<RuleDefinition> table = rules;
+                builder.router((src, contexts) -> {
+                    ConversationContext current = contexts.getCurrent();
+                    for (RuleDefinition rule : table) {
+                        if (rule.matches(current)) {
+                            return rule.target;
+                        }
+                    }
+                    return fallback;
+                });
+            }
+            return builder.build();
+        }
+
+        private ConversationPrompt prompt() {
+            Matcher matcher = PLACEHOLDER.matcher(prompt);
+            if (!matcher.find()) {
+                return ConversationPrompt.of(TextSerializers.FORMATTING_CODE.deserialize(prompt));
+            }
+
+            String template = prompt;
+            return ConversationPrompt.shared(contexts -> {
+                Matcher placeholders = PLACEHOLDER.matcher(template);
+                StringBuffer buffer = new StringBuffer(template.length() + 16);
+                while (placeholders.find()) {
+                    // contexts are stored under the lowercased route
+                    Object value = contexts.getLast(placeholders.group(1).toLowerCase(), placeholders.group(2)).orElse("");
+                    placeholders.appendReplacement(buffer, Matcher.quoteReplacement(String.valueOf(value)));
+                }
+                placeholders.appendTail(buffer);
+                return TextSerializers.FORMATTING_CODE.deserialize(buffer.toString());
+            });
+        }
+
+        private static NodeDefinition parse(String spec, String route, ConfigurationNode node, Set<String> routes) {
+            String prompt = node.getNode("prompt").getString("");
+            Matcher placeholders = PLACEHOLDER.matcher(prompt);
+            while (placeholders.find()) {
+                Preconditions.checkArgument(routes.contains(placeholders.group(1)), "%s: the prompt of node '%s' refers to unknown node '%s'", spec, route, placeholders.group(1));
+            }
+
+            List<ParameterDefinition> parameters = new ArrayList<>();
+            Set<String> keys = new HashSet<>();
+            for (ConfigurationNode parameter : node.getNode("parameters").getChildrenList()) {
+                ParameterDefinition definition = ParameterDefinition.parse(spec, route, parameter);
+                Preconditions.checkArgument(keys.add(definition.key), "%s: node '%s' declares parameter '%s' twice", spec, route, definition.key);
+                parameters.add(definition);
+            }
+
+            List<RuleDefinition> rules = new ArrayList<>();
+            for (ConfigurationNode rule : node.getNode("routes").getChildrenList()) {
+                RuleDefinition definition = RuleDefinition.parse(spec, route, rule, keys);
+                checkRoute(spec, route, definition.route, routes);
+                rules.add(definition);
+            }
+
+            String target = node.getNode("route").getString();
+            Preconditions.checkArgument(target != null || !rules.isEmpty(), "%s: node '%s' has no route", spec, route);
+            if (target != null) {
+                checkRoute(spec, route, target, routes);
+            }
+
+            boolean suppressInput = node.getNode("suppress-input").getBoolean(false);
+            return new NodeDefinition(route, prompt, suppressInput, target, ImmutableList.copyOf(parameters), ImmutableList.copyOf(rules));
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(route);
+            out.writeUTF(prompt);
+            out.writeBoolean(suppressInput);
+            out.writeBoolean(target != null);
+            if (target != null) {
+                out.writeUTF(target);
+            }
+            out.writeInt(parameters.size());
+            for (ParameterDefinition parameter : parameters) {
+                parameter.write(out);
+            }
+            out.writeInt(rules.size());
+            for (RuleDefinition rule : rules) {
+                rule.write(out);
+            }
+        }
+
+        private static NodeDefinition read(DataInputStream in) throws IOException {
+            String route = in.readUTF();
+            String prompt = in.readUTF();
+            boolean suppressInput = in.readBoolean();
+            String target = in.readBoolean() ? in.readUTF() : null;
+            int parameterCount = in.readInt();
+            List<ParameterDefinition> parameters = new ArrayList<>(parameterCount);
+            for (int i = 0; i < parameterCount; i++) {
+                parameters.add(ParameterDefinition.read(in));
+            }
+            int ruleCount = in.readInt();
+            List<RuleDefinition> rules = new ArrayList<>(ruleCount);
+            for (int i = 0; i < ruleCount; i++) {
+                rules.add(RuleDefinition.read(in));
+            }
+            return new NodeDefinition(route, prompt, suppressInput, target, parameters, rules);
+        }
+    }
+
+    private enum ParameterType {
+        INTEGER, DOUBLE, BOOLEAN, STRING, JOINED, CHOICES
+    }
+
+    private static final class ParameterDefinition {
+
+        private final String key;
+        private final ParameterType type;
+        private final List<String> choices;
+
+        private ParameterDefinition(String key, ParameterType type, List<String> choices) {
+            this.key = key;
+            this.type = type;
+            this.choices = choices;
+        }
+
+        private void addTo(ConversationNode.Builder builder) {
+            Text key = Text.of(this.key);
+            switch (type) {
+                case INTEGER:
+                    builder.intParameter(key);
+                    break;
+                case DOUBLE:
+                    builder.doubleParameter(key);
+                    break;
+                case BOOLEAN:
+                    builder.booleanParameter(key);
+                    break;
+                case STRING:
+                    builder.stringParameter(key);
+                    break;
+                case JOINED:
+                    builder.joinedStringsParameter(key);
+                    break;
+                case CHOICES:
+                    builder.choices(key, choices.toArray(new String[choices.size()]));
+                    break;
+            }
+        }
+
+        private static ParameterDefinition parse(String spec, String route, ConfigurationNode node) {
+            String key = node.getNode("key").getString();
+            Preconditions.checkArgument(key != null, "%s: node '%s' has a parameter without a key", spec, route);
+            String typeName = node.getNode("type").getString("string");
+            ParameterType type;
+            try {
+                type = ParameterType.valueOf(typeName.toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(String.format("%s: parameter '%s' of node '%s' has unknown type '%s'", spec, key, route, typeName));
+            }
+
+            List<String> choices = new ArrayList<>();
+            for (ConfigurationNode choice : node.getNode("choices").getChildrenList()) {
+                choices.add(choice.getString());
+            }
+            Preconditions.checkArgument(type != ParameterType.CHOICES || !choices.isEmpty(), "%s: parameter '%s' of node '%s' has no choices", spec, key, route);
+            return new ParameterDefinition(key, type, ImmutableList.copyOf(choices));
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(key);
+            out.writeByte(type.ordinal());
+            writeStrings(out, choices);
+        }
+
+        private static ParameterDefinition read(DataInputStream in) throws IOException {
+            String key = in.readUTF();
+            ParameterType type = ParameterType.values()[in.readByte()];
+            return new ParameterDefinition(key, type, readStrings(in));
+        }
+    }
+
+    private static final class RuleDefinition {
+
+        private static final byte ANY = 0;
+        private static final byte EQUALS = 1;
+        private static final byte AT_LEAST = 2;
+        private static final byte AT_MOST = 3;
+
+        private final String key;
+        private final byte operator;
+        private final String value;
+        private final String route;
+        private final ConversationRoute target;
+        private final double threshold;
+
+        private RuleDefinition(String key, byte operator, String value, String route) {
+            this.key = key;
+            this.operator = operator;
+            this.value = value;
+            this.route = route;
+            this.target = toRoute(route);
+            this.threshold = operator == AT_LEAST || operator == AT_MOST ? Double.parseDouble(value) : 0D;
+        }
+
+        private boolean matches(ConversationContext context) {
+            if (operator == ANY) {
+                return true;
+            }
+            Optional<Object> actual = context.getFirst(key);
+            if (!actual.isPresent()) {
+                return false;
+            }
+            switch (operator) {
+                case EQUALS:
+                    return String.valueOf(actual.get()).equalsIgnoreCase(value);
+                case AT_LEAST:
+                    return actual.get() instanceof Number && ((Number) actual.get()).doubleValue() >= threshold;
+                case AT_MOST:
+                    return actual.get() instanceof Number && ((Number) actual.get()).doubleValue() <= threshold;
+                default:
+                    return false;
+            }
+        }
+
+        private static RuleDefinition parse(String spec, String route, ConfigurationNode node, Set<String> keys) {
+            String target = node.getNode("route").getString();
+            String key = node.getNode("key").getString();
+            if (key == null) {
+                return new RuleDefinition("", ANY, "", target != null ? target : "");
+            }
+            Preconditions.checkArgument(keys.contains(key), "%s: a route of node '%s' tests unknown parameter '%s'", spec, route, key);
+
+            byte operator;
+            String value;
+            if (!node.getNode("equals").isVirtual()) {
+                operator = EQUALS;
+                value = node.getNode("equals").getString();
+            } else if (!node.getNode("at-least").isVirtual()) {
+                operator = AT_LEAST;
+                value = node.getNode("at-least").getString();
+            } else if (!node.getNode("at-most").isVirtual()) {
+                operator = AT_MOST;
+                value = node.getNode("at-most").getString();
+            } else {
+                throw new IllegalArgumentException(String.format("%s: a route of node '%s' tests '%s' without 'equals', 'at-least' or 'at-most'", spec, route, key));
+            }
+            if (operator != EQUALS) {
+                try {
+                    Double.parseDouble(value);
+                } catch (NumberFormatException | NullPointerException e) {
+                    throw new IllegalArgumentException(String.format("%s: a route of node '%s' compares '%s' to non-number '%s'", spec, route, key, value));
+                }
+            }
+            return new RuleDefinition(key, operator, value, target != null ? target : "");
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeUTF(key);
+            out.writeByte(operator);
+            out.writeUTF(value);
+            out.writeUTF(route);
+        }
+
+        private static RuleDefinition read(DataInputStream in) throws IOException {
+            return new RuleDefinition(in.readUTF(), in.readByte(), in.readUTF(), in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package me.dags.converse;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.gson.GsonConfigurationLoader;
+import ninja.leaping.configurate.hocon.HoconConfigurationLoader;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads ConversationSpecs from HOCON (.conf, .hocon) or JSON (.json) files.
+ *
+ * The first time a file is loaded it is parsed and validated, and the resulting definition is written to the cache
+ * directory (if one is given) under the hash of the file's name and contents. Subsequent loads of an unchanged file
+ * read the cached definition instead, skipping the configuration parser entirely. Editing or renaming a file changes
+ * its hash, so stale entries are never read, and loadAll deletes them.
+ */
+public final class SpecLoader {
+
+    private static final int FORMAT = 1;
+
+    private final Path cacheDirectory;
+
+    /**
+     * Create a SpecLoader that parses every file it loads
+     */
+    public SpecLoader() {
+        this.cacheDirectory = null;
+    }
+
+    /**
+     * Create a SpecLoader that caches validated specs in the given directory
+     * @param cacheDirectory The directory to store cached specs in
+     */
+    public SpecLoader(Path cacheDirectory) {
+        Preconditions.checkNotNull(cacheDirectory);
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Load the ConversationSpec defined by the given file. The spec id defaults to the file name (without extension)
+     * if the file does not declare one.
+     * @param file The HOCON or JSON file to load
+     * @return The ConversationSpec
+     * @throws IOException If the file could not be read or parsed
+     * @throws IllegalArgumentException If the file does not describe a valid ConversationSpec
+     */
+    public ConversationSpec load(Path file) throws IOException {
+        return load(file, null);
+    }
+
+    private ConversationSpec load(Path file, @Nullable Set<String> hashes) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        // the file name is the default spec id, which is baked into the cached definition
+        String hash = Hashing.sha256().newHasher()
+                .putInt(FORMAT)
+                .putString(baseName(file), StandardCharsets.UTF_8)
+                .putBytes(bytes)
+                .hash()
+                .toString();
+        if (hashes != null) {
+            hashes.add(hash);
+        }
+
+        Optional<SpecDefinition> cached = readCached(hash);
+        if (cached.isPresent()) {
+            return cached.get().build();
+        }
+
+        SpecDefinition definition = SpecDefinition.parse(baseName(file), parse(file, bytes));
+        writeCached(hash, definition);
+        return definition.build();
+    }
+
+    /**
+     * Load every spec file in the given directory in parallel. Files that fail to load are reported and skipped.
+     * Cached definitions that no longer match any file in the directory are deleted, so the cache directory should
+     * not be shared between spec directories.
+     * @param directory The directory containing the spec files
+     * @return The ConversationSpecs that were loaded successfully
+     * @throws IOException If the directory could not be listed
+     */
+    public List<ConversationSpec> loadAll(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(SpecLoader::isSpecFile).sorted().collect(Collectors.toList());
+        }
+
+        Set<String> hashes = Sets.newConcurrentHashSet();
+        List<ConversationSpec> specs = files.parallelStream()
+                .map(file -> loadSafely(file, hashes))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toCollection(ArrayList::new));
+        prune(hashes);
+        return specs;
+    }
+
+    private Optional<ConversationSpec> loadSafely(Path file, Set<String> hashes) {
+        try {
+            return Optional.of(load(file, hashes));
+        } catch (IOException | RuntimeException e) {
+            new IOException("Unable to load conversation spec " + file, e).printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    private Optional<SpecDefinition> readCached(String hash) {
+        Path path = cachePath(hash);
+        if (path == null || !Files.exists(path)) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FORMAT) {
+                return Optional.empty();
+            }
+            return Optional.of(SpecDefinition.read(in));
+        } catch (IOException | RuntimeException e) {
+            // a corrupt entry is re-parsed and overwritten
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    private void writeCached(String hash, SpecDefinition definition) {
+        Path path = cachePath(hash);
+        if (path == null) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path temp = Files.createTempFile(cacheDirectory, hash, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT);
+                definition.write(out);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Delete the cached definitions whose hash is not in the given set
+     */
+    private void prune(Set<String> hashes) {
+        if (cacheDirectory == null || !Files.isDirectory(cacheDirectory)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDirectory, "*.bin")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (!hashes.contains(name.substring(0, name.length() - ".bin".length()))) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Nullable
+    private Path cachePath(String hash) {
+        return cacheDirectory != null ? cacheDirectory.resolve(hash + ".bin") : null;
+    }
+
+    private static ConfigurationNode parse(Path file, byte[] bytes) throws IOException {
+        String content = new String(bytes, StandardCharsets.UTF_8);
+        if (extension(file).equals("json")) {
+            return GsonConfigurationLoader.builder()
+                    .setSource(() -> new BufferedReader(new StringReader(content)))
+                    .build()
+                    .load();
+        }
+        return HoconConfigurationLoader.builder()
+                .setSource(() -> new BufferedReader(new StringReader(content)))
+                .build()
+                .load();
+    }
+
+    private static boolean isSpecFile(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        String extension = extension(path);
+        return extension.equals("conf") || extension.equals("hocon") || extension.equals("json");
+    }
+
+    private static String extension(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+    }
+
+    private static String baseName(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+}
@@ -0,0 +1,36 @@
+package me.dags.converse;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Conversation counts of a single ConversationSpec
+ */
+final class SpecMetrics {
+
+    final LongAdder active = new LongAdder();
+    final LongAdder started = new LongAdder();
+    final LongAdder completed = new LongAdder();
+    final LongAdder exited = new LongAdder();
+    final LongAdder expired = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+
+    MetricsSnapshot.SpecSnapshot snapshot(ConversationSpec spec) {
+        ImmutableList.Builder<MetricsSnapshot.NodeSnapshot> nodes = ImmutableList.builder();
+        for (int state = 0; state < spec.getStateCount(); state++) {
+            ConversationNode node = spec.getNode(state);
+            nodes.add(node.getMetrics().snapshot(node));
+        }
+        return new MetricsSnapshot.SpecSnapshot(
+                spec.getName(),
+                active.sum(),
+                started.sum(),
+                completed.sum(),
+                exited.sum(),
+                expired.sum(),
+                rejected.sum(),
+                nodes.build()
+        );
+    }
+}
@@ -0,0 +1,51 @@
+package me.dags.converse;
+
+import org.spongepowered.api.text.Text;
+
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A group of Conversations started together, whose first prompts are sent a limited number per tick
+ */
+final class StartBatch {
+
+    private final Iterator<Conversation> conversations;
+    private final int first;
+    private final Text shared;
+    private final int perTick;
+
+    StartBatch(List<Conversation> conversations, int first, @Nullable Text shared, int perTick) {
+        this.conversations = conversations.iterator();
+        this.first = first;
+        this.shared = shared;
+        this.perTick = perTick;
+    }
+
+    int getPerTick() {
+        return perTick;
+    }
+
+    boolean isDone() {
+        return !conversations.hasNext();
+    }
+
+    /**
+     * Prompt the next Conversations in the batch, skipping any that have since ended
+     * @param budget The number of first prompts the tick has left to send
+     * @return The number of first prompts sent
+     */
+    int send(ConversationManager manager, int budget) {
+        int limit = Math.min(budget, perTick);
+        int sent = 0;
+        while (sent < limit && conversations.hasNext()) {
+            Conversation conversation = conversations.next();
+            if (manager.isActive(conversation)) {
+                conversation.begin(first, shared);
+                sent++;
+            }
+        }
+        return sent;
+    }
+}
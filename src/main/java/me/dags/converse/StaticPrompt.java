@@ -0,0 +1,27 @@
+package me.dags.converse;
+
+import com.google.common.base.Preconditions;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+
+/**
+ * A ConversationPrompt whose Text is fixed when the ConversationNode is built.
+ */
+final class StaticPrompt implements ConversationPrompt {
+
+    private final Text text;
+
+    StaticPrompt(Text text) {
+        Preconditions.checkNotNull(text);
+        this.text = text;
+    }
+
+    Text getText() {
+        return text;
+    }
+
+    @Override
+    public Text apply(CommandSource src, ContextCollection contexts) {
+        return text;
+    }
+}
@@ -0,0 +1,50 @@
+package me.dags.converse;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Collections2;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.MessageChannel;
+import org.spongepowered.api.text.channel.MessageReceiver;
+import org.spongepowered.api.text.chat.ChatType;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Wraps a MessageChannel so that CommandSources taking part in a message-suppressing Conversation do not receive
+ * its messages.
+ * Recipients are checked against the ConversationManager's index of suppressed identifiers as the message is sent,
+ * so the wrapped channel's members are never copied.
+ */
+final class SuppressingChannel implements MessageChannel {
+
+    private final MessageChannel channel;
+    private final Set<String> suppressed;
+    private final Predicate<MessageReceiver> filter;
+
+    SuppressingChannel(MessageChannel channel, Set<String> suppressed) {
+        this.channel = channel;
+        this.suppressed = suppressed;
+        this.filter = receiver -> !isSuppressed(receiver);
+    }
+
+    @Override
+    public Optional<Text> transformMessage(@Nullable Object sender, MessageReceiver recipient, Text original, ChatType type) {
+        if (isSuppressed(recipient)) {
+            return Optional.empty();
+        }
+        return channel.transformMessage(sender, recipient, original, type);
+    }
+
+    @Override
+    public Collection<MessageReceiver> getMembers() {
+        return Collections2.filter(channel.getMembers(), filter);
+    }
+
+    private boolean isSuppressed(MessageReceiver receiver) {
+        return receiver instanceof CommandSource && suppressed.contains(((CommandSource) receiver).getIdentifier());
+    }
+}
@@ -0,0 +1,31 @@
+package me.dags.converse;
+
+/**
+ * A token bucket rate limiter. Tokens are refilled continuously at a fixed rate up to the size of the bucket, and
+ * each permitted input takes one token.
+ */
+final class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double perSecond, int burst, long now) {
+        this.tokensPerNano = perSecond / 1e9;
+        this.capacity = burst;
+        this.tokens = burst;
+        this.refilledAt = now;
+    }
+
+    synchronized boolean tryAcquire(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        if (tokens >= 1D) {
+            tokens -= 1D;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+package me.dags.converse;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads a single type of parsed argument value so that ConversationContexts can be persisted.
+ * Codecs are registered with the ConversationManager; values of a type without a codec are not persisted.
+ *
+ * @param <T> The type of value handled
+ */
+public interface ValueCodec<T> {
+
+    /**
+     * @return A short identifier written alongside each value, which must not change between server restarts.
+     */
+    String getId();
+
+    /**
+     * @return The exact class of values handled by this codec.
+     */
+    Class<T> getType();
+
+    void write(DataOutput out, T value) throws IOException;
+
+    T read(DataInput in) throws IOException;
+
+    static <T> ValueCodec<T> of(String id, Class<T> type, Writer<T> writer, Reader<T> reader) {
+        return new ValueCodec<T>() {
+            @Override
+            public String getId() {
+                return id;
+            }
+
+            @Override
+            public Class<T> getType() {
+                return type;
+            }
+
+            @Override
+            public void write(DataOutput out, T value) throws IOException {
+                writer.write(out, value);
+            }
+
+            @Override
+            public T read(DataInput in) throws IOException {
+                return reader.read(in);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    interface Writer<T> {
+
+        void write(DataOutput out, T value) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Reader<T> {
+
+        T read(DataInput in) throws IOException;
+    }
+}
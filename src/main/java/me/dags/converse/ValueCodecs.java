@@ -0,0 +1,192 @@
+package me.dags.converse;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.io.*;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The registry of ValueCodecs used to encode ConversationContexts, and whole ContextCollections, into a compact
+ * binary form.
+ * Codecs for strings, the primitive wrapper types and UUIDs are registered by default.
+ */
+final class ValueCodecs {
+
+    private final Map<Class<?>, ValueCodec<?>> byType = Maps.newConcurrentMap();
+    private final Map<String, ValueCodec<?>> byId = Maps.newConcurrentMap();
+
+    ValueCodecs() {
+        register(ValueCodec.of("str", String.class, DataOutput::writeUTF, DataInput::readUTF));
+        register(ValueCodec.of("int", Integer.class, DataOutput::writeInt, DataInput::readInt));
+        register(ValueCodec.of("long", Long.class, DataOutput::writeLong, DataInput::readLong));
+        register(ValueCodec.of("double", Double.class, DataOutput::writeDouble, DataInput::readDouble));
+        register(ValueCodec.of("bool", Boolean.class, DataOutput::writeBoolean, DataInput::readBoolean));
+        register(ValueCodec.of("uuid", UUID.class, (out, uuid) -> {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }, in -> new UUID(in.readLong(), in.readLong())));
+    }
+
+    void register(ValueCodec<?> codec) {
+        Preconditions.checkNotNull(codec);
+        byType.put(codec.getType(), codec);
+        byId.put(codec.getId(), codec);
+    }
+
+    /**
+     * Write every value of the context that has a registered codec
+     */
+    void writeContext(DataOutput out, ConversationContext context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream values = new DataOutputStream(bytes);
+        int[] count = {0};
+        try {
+            context.forEachArg((key, value) -> {
+                ValueCodec<Object> codec = cast(byType.get(value.getClass()));
+                if (key != null && codec != null) {
+                    try {
+                        values.writeUTF(key);
+                        values.writeUTF(codec.getId());
+                        codec.write(values, value);
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.writeInt(count[0]);
+        out.write(bytes.toByteArray());
+    }
+
+    ConversationContext readContext(DataInput in, ContextSchema schema) throws IOException {
+        ConversationContext context = new ConversationContext(schema);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            String id = in.readUTF();
+            ValueCodec<?> codec = byId.get(id);
+            if (codec == null) {
+                throw new IOException("No ValueCodec registered for id '" + id + "'");
+            }
+            context.putArg(key, codec.read(in));
+        }
+        return context;
+    }
+
+    /**
+     * @return true if every value in the context has a registered codec
+     */
+    boolean supports(ConversationContext context) {
+        boolean[] supported = {true};
+        context.forEachArg((key, value) -> supported[0] &= key != null && byType.containsKey(value.getClass()));
+        return supported[0];
+    }
+
+    /**
+     * @return true if every value in every context of the collection has a registered codec
+     */
+    boolean supports(ContextCollection collection) {
+        boolean[] supported = {supports(collection.getCurrent())};
+        collection.forEachRoute((route, contexts) -> {
+            for (ConversationContext context : contexts) {
+                supported[0] &= supports(context);
+            }
+        });
+        return supported[0];
+    }
+
+    void writeContexts(DataOutput out, ContextCollection collection) throws IOException {
+        int[] routes = {0};
+        collection.forEachRoute((route, contexts) -> routes[0]++);
+        out.writeInt(routes[0]);
+
+        IOException[] error = {null};
+        collection.forEachRoute((route, contexts) -> {
+            try {
+                out.writeUTF(route);
+                out.writeInt(contexts.size());
+                for (ConversationContext context : contexts) {
+                    writeContext(out, context);
+                }
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        String currentRoute = collection.getCurrentRoute();
+        if (currentRoute == null) {
+            out.writeByte(0);
+        } else if (collection.getLastContext(currentRoute).orElse(null) == collection.getCurrent()) {
+            out.writeByte(1);
+            out.writeUTF(currentRoute);
+        } else {
+            out.writeByte(2);
+            out.writeUTF(currentRoute);
+            writeContext(out, collection.getCurrent());
+        }
+    }
+
+    ContextCollection readContexts(DataInput in, ConversationSpec spec) throws IOException {
+        ContextCollection collection = new ContextCollection(spec.getRetention());
+        int routes = in.readInt();
+        for (int i = 0; i < routes; i++) {
+            String route = in.readUTF();
+            ConversationNode node = getNode(spec, route);
+            collection.visit(route, node != null ? node.getRetention() : null);
+            int count = in.readInt();
+            for (int j = 0; j < count; j++) {
+                ConversationContext context = readContext(in, node != null ? node.getSchema() : ContextSchema.EMPTY);
+                collection.putContext(route, context, node != null ? node.getRetention() : null);
+            }
+        }
+
+        byte current = in.readByte();
+        if (current == 1) {
+            String route = in.readUTF();
+            collection.getLastContext(route).ifPresent(context -> collection.setCurrent(route, context));
+        } else if (current == 2) {
+            String route = in.readUTF();
+            ConversationNode node = getNode(spec, route);
+            collection.setCurrent(route, readContext(in, node != null ? node.getSchema() : ContextSchema.EMPTY));
+        }
+        return collection;
+    }
+
+    byte[] encode(ContextCollection collection) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeContexts(new DataOutputStream(bytes), collection);
+        return bytes.toByteArray();
+    }
+
+    ContextCollection decode(byte[] data, ConversationSpec spec) throws IOException {
+        return readContexts(new DataInputStream(new ByteArrayInputStream(data)), spec);
+    }
+
+    byte[] encode(ConversationContext context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeContext(new DataOutputStream(bytes), context);
+        return bytes.toByteArray();
+    }
+
+    ConversationContext decode(byte[] data, ContextSchema schema) throws IOException {
+        return readContext(new DataInputStream(new ByteArrayInputStream(data)), schema);
+    }
+
+    private static ConversationNode getNode(ConversationSpec spec, String route) {
+        int state = spec.getState(ConversationRoute.goTo(route));
+        return state >= 0 ? spec.getNode(state) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ValueCodec<T> cast(ValueCodec<?> codec) {
+        return (ValueCodec<T>) codec;
+    }
+}
@@ -0,0 +1,122 @@
+package me.dags.converse;
+
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.MessageChannel;
+import org.spongepowered.api.text.channel.MessageReceiver;
+import org.spongepowered.api.text.serializer.SafeTextSerializer;
+import org.spongepowered.api.text.serializer.TextSerializers;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight stand-ins for the server objects that Conversations interact with, so that the benchmarks and the load
+ * harness run on a plain JVM.
+ *
+ * The Sponge API leaves some of its constants as placeholders that only a Sponge implementation fills in. Of these,
+ * Converse needs the text serializers: Text.toPlain derives the keys of node parameters and the messages of parse
+ * errors. The stand-ins source set provides its own TextSerializers, which is loaded in place of the Sponge API's
+ * because it comes first on the classpath. install() checks that it was, and must be called before any
+ * ConversationNode is built.
+ */
+final class StandIns {
+
+    private static boolean installed = false;
+
+    private StandIns() {}
+
+    /**
+     * Check that the stand-in text serializers are in place of the Sponge API's placeholders
+     */
+    static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        SafeTextSerializer plain = TextSerializers.PLAIN;
+        if (plain == null || !"plain".equals(plain.serialize(Text.of("plain")))) {
+            throw new IllegalStateException("The stand-in TextSerializers must come before the Sponge API on the classpath");
+        }
+        installed = true;
+    }
+
+    /**
+     * Create a CommandSource that has every permission and counts, but otherwise discards, the messages it is sent
+     * @param name The name and identifier of the source
+     * @param received Incremented for each message sent to the source
+     */
+    static CommandSource source(String name, AtomicLong received) {
+        return source(name, received::incrementAndGet);
+    }
+
+    /**
+     * Create a CommandSource that has every permission and notifies the listener of, but otherwise discards, the
+     * messages it is sent. The source is proxied rather than implemented so that it keeps working as the
+     * CommandSource interface grows; any other method returns an empty or zero value.
+     * @param name The name and identifier of the source
+     * @param onMessage Run for each message sent to the source
+     */
+    static CommandSource source(String name, Runnable onMessage) {
+        return (CommandSource) Proxy.newProxyInstance(CommandSource.class.getClassLoader(), new Class<?>[]{CommandSource.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getIdentifier":
+                case "getName":
+                case "toString":
+                    return name;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "hasPermission":
+                    return true;
+                case "sendMessage":
+                case "sendMessages":
+                    onMessage.run();
+                    return null;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    static CommandSource source(String name) {
+        return source(name, new AtomicLong());
+    }
+
+    /**
+     * @return A MessageChannel containing the given members
+     */
+    static MessageChannel channel(Collection<? extends MessageReceiver> members) {
+        List<MessageReceiver> list = Collections.unmodifiableList(new ArrayList<>(members));
+        return () -> list;
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0D;
+        }
+        if (type == Optional.class) {
+            return Optional.empty();
+        }
+        if (type == List.class || type == Collection.class) {
+            return Collections.emptyList();
+        }
+        if (type == Set.class) {
+            return Collections.emptySet();
+        }
+        if (type == Map.class) {
+            return Collections.emptyMap();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,81 @@
+package org.spongepowered.api.text.serializer;
+
+import org.spongepowered.api.text.LiteralText;
+import org.spongepowered.api.text.Text;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+
+/**
+ * Stand-in for the Sponge API's TextSerializers, which only holds placeholders until a Sponge implementation fills
+ * them in. The stand-ins source set comes before the Sponge API on the benchmark and harness classpaths, so this
+ * class is loaded in its place and provides minimal serializers for literal text on a plain JVM.
+ *
+ * Formatting codes are stripped rather than applied, and JSON and TextXML are treated as plain text.
+ */
+public final class TextSerializers {
+
+    public static final SafeTextSerializer PLAIN = serializer(SafeTextSerializer.class, "plain", '\0');
+    public static final FormattingCodeTextSerializer LEGACY_FORMATTING_CODE = formattingCode('\u00A7');
+    public static final FormattingCodeTextSerializer FORMATTING_CODE = formattingCode('&');
+    public static final TextSerializer JSON = serializer(TextSerializer.class, "json", '\0');
+    public static final TextSerializer TEXT_XML = serializer(TextSerializer.class, "xml", '\0');
+
+    private TextSerializers() {}
+
+    public static FormattingCodeTextSerializer formattingCode(char formattingChar) {
+        return serializer(FormattingCodeTextSerializer.class, "formatting_code", formattingChar);
+    }
+
+    private static <T> T serializer(Class<T> type, String id, char formattingChar) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getId":
+                case "getName":
+                case "toString":
+                    return id;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "getCharacter":
+                    return formattingChar;
+                case "serialize":
+                    StringBuilder builder = new StringBuilder();
+                    for (Text text : ((Text) args[0]).withChildren()) {
+                        builder.append(plain(text));
+                    }
+                    return builder.toString();
+                case "serializeSingle":
+                    return plain((Text) args[0]);
+                case "stripCodes":
+                    return strip((String) args[0], formattingChar);
+                case "deserialize":
+                case "deserializeUnchecked":
+                    return Text.of(strip((String) args[0], formattingChar));
+                default:
+                    return method.getReturnType() == Optional.class ? Optional.empty() : null;
+            }
+        }));
+    }
+
+    private static String plain(Text text) {
+        return text instanceof LiteralText ? ((LiteralText) text).getContent() : "";
+    }
+
+    private static String strip(String input, char formattingChar) {
+        if (formattingChar == '\0' || input.indexOf(formattingChar) < 0) {
+            return input;
+        }
+        StringBuilder builder = new StringBuilder(input.length());
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == formattingChar && i + 1 < input.length()) {
+                i++;
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}